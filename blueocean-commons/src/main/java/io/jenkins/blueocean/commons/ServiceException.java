@@ -261,6 +261,24 @@ public class ServiceException extends RuntimeException implements HttpResponse {
         }
     }
 
+    public static class ServiceUnavailableException extends ServiceException{
+
+        public ServiceUnavailableException(String message) {
+            super(SERVICE_UNAVAILABLE, message);
+        }
+
+        public ServiceUnavailableException(String message, Throwable throwable ) {
+            super(SERVICE_UNAVAILABLE, message, throwable);
+        }
+
+        public ServiceUnavailableException(ErrorMessage errorMessage) {
+            super(SERVICE_UNAVAILABLE, errorMessage.message);
+        }
+        public ServiceUnavailableException(ErrorMessage errorMessage, Throwable throwable ) {
+            super(SERVICE_UNAVAILABLE, errorMessage.message, throwable);
+        }
+    }
+
     public static class NotImplementedException extends ServiceException{
 
         public NotImplementedException(String message) {
@@ -326,4 +344,5 @@ public class ServiceException extends RuntimeException implements HttpResponse {
     public static final int TOO_MANY_REQUESTS = 429;
     public static final int INTERNAL_SERVER_ERROR = 500;
     public static final int NOT_IMPLEMENTED = 501;
+    public static final int SERVICE_UNAVAILABLE = 503;
 }
@@ -5,13 +5,11 @@ import hudson.model.Job;
 import io.jenkins.blueocean.rest.hal.Link;
 import io.jenkins.blueocean.rest.model.BluePipeline;
 import io.jenkins.blueocean.rest.model.BluePipelineContainer;
-import io.jenkins.blueocean.rest.model.BlueRun;
 import io.jenkins.blueocean.service.embedded.rest.ContainerFilter;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
-import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 
@@ -40,8 +38,9 @@ public class BranchContainerImpl extends BluePipelineContainer {
                 return 1;
             }
 
-            BlueRun latestRun1 = pipeline1.getLatestRun();
-            BlueRun latestRun2 = pipeline2.getLatestRun();
+            // times come from the run index, latest builds aren't loaded to order branches
+            BranchImpl.LatestRunTimes latestRun1 = pipeline1.getLatestRunTimes();
+            BranchImpl.LatestRunTimes latestRun2 = pipeline2.getLatestRunTimes();
 
             // If a pipeline doesnt have a run yet, no need to go further.
             if(latestRun1 != null && latestRun2 == null) {
@@ -58,8 +57,8 @@ public class BranchContainerImpl extends BluePipelineContainer {
             }
 
             // If one run hasnt finished yet, then lets order by that.
-            Date endTime1 = latestRun1.getEndTime() ;
-            Date endTime2 = latestRun2.getEndTime();
+            Long endTime1 = latestRun1.endTime;
+            Long endTime2 = latestRun2.endTime;
             if(endTime1 != null && endTime2 == null) {
                 return 1;
             }
@@ -70,11 +69,11 @@ public class BranchContainerImpl extends BluePipelineContainer {
 
             // If both jobs have ended, lets order by the one that ended last.
             if(endTime1 != null && endTime2 != null) {
-                if(endTime1.getTime() > endTime2.getTime()) {
+                if(endTime1 > endTime2) {
                     return -1;
                 }
 
-                if(endTime1.getTime() < endTime2.getTime()) {
+                if(endTime1 < endTime2) {
                     return 1;
                 }
 
@@ -82,26 +81,12 @@ public class BranchContainerImpl extends BluePipelineContainer {
             }
 
             //If both jobs have not eneded yet, we need to order by start time.
-            Date startTime1 = latestRun1.getStartTime();
-            Date startTime2 = latestRun2.getStartTime();
-            if(startTime1 != null && startTime2 == null) {
-                return 1;
-            }
-
-            if(startTime1 == null && startTime2 != null) {
+            if(latestRun1.startTime > latestRun2.startTime) {
                 return -1;
             }
 
-            if(startTime1 != null && startTime2 != null) {
-                if(startTime1.getTime() > startTime2.getTime()) {
-                    return -1;
-                }
-
-                if(startTime1.getTime() < startTime2.getTime()) {
-                    return 1;
-                }
-
-                return pipeline1.getName().compareTo(pipeline2.getName());
+            if(latestRun1.startTime < latestRun2.startTime) {
+                return 1;
             }
 
             return pipeline1.getName().compareTo(pipeline2.getName());
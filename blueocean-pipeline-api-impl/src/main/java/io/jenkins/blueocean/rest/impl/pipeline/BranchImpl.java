@@ -8,14 +8,18 @@ import io.jenkins.blueocean.rest.Reachable;
 import io.jenkins.blueocean.rest.annotation.Capability;
 import io.jenkins.blueocean.rest.hal.Link;
 import io.jenkins.blueocean.rest.model.BluePipeline;
+import io.jenkins.blueocean.rest.model.BlueRun;
 import io.jenkins.blueocean.rest.model.Resource;
 import io.jenkins.blueocean.service.embedded.rest.BluePipelineFactory;
+import io.jenkins.blueocean.service.embedded.rest.RunSummaryIndex;
 import jenkins.branch.MultiBranchProject;
 import jenkins.scm.api.SCMHead;
 import jenkins.scm.api.actions.ChangeRequestAction;
 import org.jenkinsci.plugins.workflow.job.WorkflowJob;
 import org.kohsuke.stapler.export.Exported;
 
+import javax.annotation.CheckForNull;
+
 import static io.jenkins.blueocean.rest.model.KnownCapabilities.BLUE_BRANCH;
 import static io.jenkins.blueocean.rest.model.KnownCapabilities.PULL_REQUEST;
 import static io.jenkins.blueocean.rest.model.KnownCapabilities.JENKINS_WORKFLOW_JOB;
@@ -54,6 +58,39 @@ public class BranchImpl extends PipelineImpl {
         return parent.rel(Util.rawEncode(getName()));
     }
 
+    /**
+     * Times of the latest run of this branch, used to order branches. They're taken from the run index of the branch
+     * if it has one, so that ordering branches doesn't load the latest build of each.
+     *
+     * @return null if the branch has no run
+     */
+    @CheckForNull LatestRunTimes getLatestRunTimes(){
+        RunSummaryIndex.Summary latest = RunSummaryIndex.getLatest(job);
+        if(latest != null){
+            return new LatestRunTimes(latest.getStartTimeInMillis(),
+                latest.getState() == BlueRun.BlueRunState.FINISHED
+                    ? latest.getStartTimeInMillis() + latest.getDurationInMillis() : null);
+        }
+        BlueRun run = getLatestRun();
+        if(run == null){
+            return null;
+        }
+        return new LatestRunTimes(run.getStartTime().getTime(),
+            run.getEndTime() != null ? run.getEndTime().getTime() : null);
+    }
+
+    /** Start and end time of a run, see {@link #getLatestRunTimes()} */
+    static final class LatestRunTimes {
+        final long startTime;
+        /** Null while the run is going */
+        final Long endTime;
+
+        private LatestRunTimes(long startTime, @CheckForNull Long endTime) {
+            this.startTime = startTime;
+            this.endTime = endTime;
+        }
+    }
+
     @Extension(ordinal = 4)
     public static class PipelineFactoryImpl extends BluePipelineFactory {
 
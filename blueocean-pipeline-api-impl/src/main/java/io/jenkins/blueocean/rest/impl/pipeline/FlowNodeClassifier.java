@@ -0,0 +1,166 @@
+package io.jenkins.blueocean.rest.impl.pipeline;
+
+import hudson.model.Action;
+import org.jenkinsci.plugins.pipeline.StageStatus;
+import org.jenkinsci.plugins.pipeline.SyntheticStage;
+import org.jenkinsci.plugins.workflow.actions.LabelAction;
+import org.jenkinsci.plugins.workflow.actions.StageAction;
+import org.jenkinsci.plugins.workflow.actions.TagsAction;
+import org.jenkinsci.plugins.workflow.actions.ThreadNameAction;
+import org.jenkinsci.plugins.workflow.graph.AtomNode;
+import org.jenkinsci.plugins.workflow.graph.FlowNode;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Classifies {@link FlowNode}s the same way as the predicates in {@link PipelineNodeUtil}, but scans actions of
+ * each node only once and remembers the result as flags together with its stage status and synthetic stage tags.
+ *
+ * Meant to be shared by the walks over a single run's flow graph, it is not thread safe.
+ */
+class FlowNodeClassifier {
+    static final int STAGE = 1;
+    static final int SYNTHETIC_STAGE = 1 << 1;
+    static final int PRE_SYNTHETIC_STAGE = 1 << 2;
+    static final int POST_SYNTHETIC_STAGE = 1 << 3;
+    static final int SKIPPED_STAGE = 1 << 4;
+    static final int PARALLEL_BRANCH = 1 << 5;
+
+    private final Map<String, Classification> classifications = new HashMap<>();
+
+    /** Display names given out, so that nodes with the same name share a single string */
+    private final Map<String, String> displayNames = new HashMap<>();
+
+    boolean isStage(@Nullable FlowNode node){
+        return is(node, STAGE);
+    }
+
+    boolean isSyntheticStage(@Nullable FlowNode node){
+        return is(node, SYNTHETIC_STAGE);
+    }
+
+    boolean isPreSyntheticStage(@Nullable FlowNode node){
+        return is(node, PRE_SYNTHETIC_STAGE);
+    }
+
+    boolean isPostSyntheticStage(@Nullable FlowNode node){
+        return is(node, POST_SYNTHETIC_STAGE);
+    }
+
+    boolean isSkippedStage(@Nullable FlowNode node){
+        return is(node, SKIPPED_STAGE);
+    }
+
+    boolean isParallelBranch(@Nullable FlowNode node){
+        return is(node, PARALLEL_BRANCH);
+    }
+
+    /** Value of {@link StageStatus#TAG_NAME} tag of given node, if any */
+    @CheckForNull String getStageStatus(@Nonnull FlowNode node){
+        return classify(node).stageStatus;
+    }
+
+    /** Value of {@link SyntheticStage#TAG_NAME} tag of given node, if any */
+    @CheckForNull String getSyntheticStage(@Nonnull FlowNode node){
+        return classify(node).syntheticStage;
+    }
+
+    /** Same as {@link PipelineNodeUtil#getDisplayName(FlowNode)}, interned across nodes classified by this instance */
+    @Nonnull String getDisplayName(@Nonnull FlowNode node){
+        String threadName = classify(node).threadName;
+        String name = threadName != null ? threadName : node.getDisplayName();
+        String interned = displayNames.get(name);
+        if(interned == null){
+            displayNames.put(name, name);
+            interned = name;
+        }
+        return interned;
+    }
+
+    @Nonnull FlowNodeWrapper.NodeType getNodeType(@Nonnull FlowNode node){
+        if(isStage(node)){
+            return FlowNodeWrapper.NodeType.STAGE;
+        }else if(isParallelBranch(node)){
+            return FlowNodeWrapper.NodeType.PARALLEL;
+        }else if(node instanceof AtomNode){
+            return FlowNodeWrapper.NodeType.STEP;
+        }
+        throw new IllegalArgumentException(String.format("Unknown FlowNode %s, type: %s",node.getId(),node.getClass()));
+    }
+
+    private boolean is(@Nullable FlowNode node, int flag){
+        return node != null && (classify(node).flags & flag) != 0;
+    }
+
+    private Classification classify(FlowNode node){
+        Classification c = classifications.get(node.getId());
+        if(c == null){
+            c = new Classification(node);
+            classifications.put(node.getId(), c);
+        }
+        return c;
+    }
+
+    private static final class Classification {
+        private final int flags;
+        private final String stageStatus;
+        private final String syntheticStage;
+        private final String threadName;
+
+        private Classification(FlowNode node) {
+            boolean stageAction = false;
+            boolean labelAction = false;
+            ThreadNameAction threadNameAction = null;
+            TagsAction stageStatusTags = null;
+            TagsAction syntheticStageTags = null;
+            for(Action action: node.getActions()){
+                if(action instanceof StageAction){
+                    stageAction = true;
+                }
+                if(action instanceof LabelAction){
+                    labelAction = true;
+                }
+                if(action instanceof ThreadNameAction && threadNameAction == null){
+                    threadNameAction = (ThreadNameAction) action;
+                }
+                if(action instanceof TagsAction){
+                    TagsAction tags = (TagsAction) action;
+                    if(stageStatusTags == null && tags.getTagValue(StageStatus.TAG_NAME) != null){
+                        stageStatusTags = tags;
+                    }
+                    if(syntheticStageTags == null && tags.getTagValue(SyntheticStage.TAG_NAME) != null){
+                        syntheticStageTags = tags;
+                    }
+                }
+            }
+            this.stageStatus = stageStatusTags == null ? null : stageStatusTags.getTagValue(StageStatus.TAG_NAME);
+            this.syntheticStage = syntheticStageTags == null ? null : syntheticStageTags.getTagValue(SyntheticStage.TAG_NAME);
+            this.threadName = threadNameAction == null ? null : threadNameAction.getThreadName();
+
+            int flags = 0;
+            boolean synthetic = syntheticStageTags != null;
+            if((stageAction && !synthetic) || (labelAction && threadNameAction == null)){
+                flags |= STAGE;
+            }
+            if(synthetic){
+                flags |= SYNTHETIC_STAGE;
+                if(SyntheticStage.getPre().equals(syntheticStage)){
+                    flags |= PRE_SYNTHETIC_STAGE;
+                }else if(SyntheticStage.getPost().equals(syntheticStage)){
+                    flags |= POST_SYNTHETIC_STAGE;
+                }
+            }
+            if(StageStatus.getSkippedForConditional().equals(stageStatus)){
+                flags |= SKIPPED_STAGE;
+            }
+            if(labelAction && threadNameAction != null){
+                flags |= PARALLEL_BRANCH;
+            }
+            this.flags = flags;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package io.jenkins.blueocean.rest.impl.pipeline;
 
+import io.jenkins.blueocean.commons.ServiceException;
+import org.jenkinsci.plugins.workflow.flow.FlowExecution;
 import org.jenkinsci.plugins.workflow.graph.AtomNode;
 import org.jenkinsci.plugins.workflow.graph.FlowNode;
 import org.jenkinsci.plugins.workflow.job.WorkflowRun;
@@ -9,8 +11,10 @@ import org.jenkinsci.plugins.workflow.support.steps.input.InputStep;
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -19,38 +23,93 @@ import java.util.List;
 public class FlowNodeWrapper {
     public enum NodeType {STAGE, PARALLEL, STEP}
 
-    private final FlowNode node;
+    private final String id;
+    private volatile FlowNode node;
     private final NodeRunStatus status;
     private final TimingInfo timingInfo;
-    public final List<String> edges = new ArrayList<>();
     public final NodeType type;
     private final String displayName;
     private final InputStep inputStep;
     private final WorkflowRun run;
 
-    private List<FlowNodeWrapper> parents = new ArrayList<>();
+    /** Run whose execution {@link #node} belongs to, used to look it up when this wrapper was created without it */
+    private final WorkflowRun nodeRun;
 
+    // lists are created with the first edge or parent, and dropped once the graph is compacted
+    private List<String> edges;
+    private List<FlowNodeWrapper> parents;
+
+    /** Edges and parents of the graph this node was compacted into, null if it wasn't */
+    private NodeAdjacency adjacency;
+    private int index;
 
 
     public FlowNodeWrapper(@Nonnull FlowNode node, @Nonnull NodeRunStatus status, @Nonnull TimingInfo timingInfo, @Nonnull  WorkflowRun run) {
+        this(node, status, timingInfo, null, run);
+    }
+
+    public FlowNodeWrapper(@Nonnull FlowNode node, @Nonnull NodeRunStatus status,
+                           @Nonnull TimingInfo timingInfo, @Nullable InputStep inputStep, @Nonnull WorkflowRun run) {
+        this.id = node.getId();
         this.node = node;
         this.status = status;
         this.timingInfo = timingInfo;
         this.type = getNodeType(node);
         this.displayName = PipelineNodeUtil.getDisplayName(node);
-        this.inputStep = null;
+        this.inputStep = inputStep;
         this.run = run;
+        this.nodeRun = run;
     }
 
-    public FlowNodeWrapper(@Nonnull FlowNode node, @Nonnull NodeRunStatus status,
-                           @Nonnull TimingInfo timingInfo, @Nullable InputStep inputStep, @Nonnull WorkflowRun run) {
+    /**
+     * Same as {@link #FlowNodeWrapper(FlowNode, NodeRunStatus, TimingInfo, InputStep, WorkflowRun)}, with node type
+     * and display name taken from given classifier.
+     */
+    FlowNodeWrapper(@Nonnull FlowNode node, @Nonnull NodeRunStatus status, @Nonnull TimingInfo timingInfo,
+                    @Nullable InputStep inputStep, @Nonnull WorkflowRun run, @Nonnull FlowNodeClassifier classifier) {
+        this.id = node.getId();
         this.node = node;
         this.status = status;
         this.timingInfo = timingInfo;
-        this.type = getNodeType(node);
-        this.displayName = PipelineNodeUtil.getDisplayName(node);
+        this.type = classifier.getNodeType(node);
+        this.displayName = classifier.getDisplayName(node);
         this.inputStep = inputStep;
         this.run = run;
+        this.nodeRun = run;
+    }
+
+    /**
+     * Creates wrapper without its {@link FlowNode}, it's looked up in run's execution when first asked for.
+     */
+    FlowNodeWrapper(@Nonnull String id, @Nonnull NodeType type, @Nonnull String displayName,
+                    @Nonnull NodeRunStatus status, @Nonnull TimingInfo timingInfo, @Nonnull WorkflowRun run) {
+        this.id = id;
+        this.node = null;
+        this.status = status;
+        this.timingInfo = timingInfo;
+        this.type = type;
+        this.displayName = displayName;
+        this.inputStep = null;
+        this.run = run;
+        this.nodeRun = run;
+    }
+
+    /**
+     * Copy of given wrapper with different status and timing, without edges and parents.
+     *
+     * Its {@link FlowNode} is still looked up in the run of given wrapper.
+     */
+    FlowNodeWrapper(@Nonnull FlowNodeWrapper wrapper, @Nonnull NodeRunStatus status, @Nonnull TimingInfo timingInfo,
+                    @Nullable InputStep inputStep, @Nonnull WorkflowRun run) {
+        this.id = wrapper.id;
+        this.node = wrapper.node;
+        this.status = status;
+        this.timingInfo = timingInfo;
+        this.type = wrapper.type;
+        this.displayName = wrapper.displayName;
+        this.inputStep = inputStep;
+        this.run = run;
+        this.nodeRun = wrapper.nodeRun;
     }
 
 
@@ -82,35 +141,100 @@ public class FlowNodeWrapper {
     }
 
     public @Nonnull String getId(){
-        return node.getId();
+        return id;
     }
 
     public @Nonnull FlowNode getNode(){
-        return node;
+        FlowNode n = node;
+        if(n == null){
+            FlowExecution execution = nodeRun.getExecution();
+            try {
+                n = execution == null ? null : execution.getNode(id);
+            } catch (IOException e) {
+                throw new ServiceException.UnexpectedErrorException(
+                    String.format("Failed to load FlowNode %s of run %s: %s", id, nodeRun.getExternalizableId(), e.getMessage()), e);
+            }
+            if(n == null){
+                throw new ServiceException.NotFoundException(
+                    String.format("FlowNode %s not found in run %s", id, nodeRun.getExternalizableId()));
+            }
+            node = n;
+        }
+        return n;
+    }
+
+    /**
+     * Drops reference to the {@link FlowNode}, {@link #getNode()} looks it up in the execution again if needed.
+     *
+     * Lets graphs that outlive a request hold node ids only instead of the flow nodes and their actions.
+     */
+    void releaseNode(){
+        node = null;
     }
 
     public void addEdge(String id){
+        checkNotCompacted();
+        if(edges == null){
+            edges = new ArrayList<>(1);
+        }
         this.edges.add(id);
     }
 
     public void addEdges(List<String> edges){
-        this.edges.addAll(edges);
+        for(String edge: edges){
+            addEdge(edge);
+        }
     }
 
     public void addParent(FlowNodeWrapper parent){
+        checkNotCompacted();
+        if(parents == null){
+            parents = new ArrayList<>(1);
+        }
         parents.add(parent);
     }
 
     public void addParents(Collection<FlowNodeWrapper> parents){
-        parents.addAll(parents);
+        for(FlowNodeWrapper parent: parents){
+            addParent(parent);
+        }
+    }
+
+    /** Ids of the nodes this node has edges to */
+    public @Nonnull List<String> getEdges(){
+        if(adjacency != null){
+            return adjacency.edgesOf(index);
+        }
+        return edges == null ? Collections.<String>emptyList() : Collections.unmodifiableList(edges);
     }
 
     public @CheckForNull FlowNodeWrapper getFirstParent(){
+        List<FlowNodeWrapper> parents = getParents();
         return parents.size() > 0 ? parents.get(0): null;
     }
 
     public @Nonnull List<FlowNodeWrapper> getParents(){
-        return parents;
+        if(adjacency != null){
+            return adjacency.parentsOf(index);
+        }
+        return parents == null ? Collections.<FlowNodeWrapper>emptyList() : Collections.unmodifiableList(parents);
+    }
+
+    /**
+     * Takes edges and parents of this node from given adjacency from now on, see {@link NodeAdjacency#compact(List)}.
+     * Nodes of a compacted graph are shared and can't be changed, copies of them can.
+     */
+    void compact(NodeAdjacency adjacency, int index){
+        this.adjacency = adjacency;
+        this.index = index;
+        this.edges = null;
+        this.parents = null;
+    }
+
+    private void checkNotCompacted(){
+        if(adjacency != null){
+            throw new IllegalStateException(String.format("Node %s of a compacted graph can't be changed", id));
+        }
     }
 
     @Override
@@ -118,7 +242,8 @@ public class FlowNodeWrapper {
         if(!(obj instanceof FlowNodeWrapper)){
             return false;
         }
-        return node.equals(((FlowNodeWrapper)obj).node);
+        FlowNodeWrapper that = (FlowNodeWrapper) obj;
+        return id.equals(that.id) && nodeRun.equals(that.nodeRun);
     }
 
     public @CheckForNull InputStep getInputStep() {
@@ -127,6 +252,6 @@ public class FlowNodeWrapper {
 
     @Override
     public int hashCode() {
-        return node.hashCode();
+        return id.hashCode();
     }
 }
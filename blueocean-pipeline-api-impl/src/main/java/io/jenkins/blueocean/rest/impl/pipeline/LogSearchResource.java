@@ -0,0 +1,355 @@
+package io.jenkins.blueocean.rest.impl.pipeline;
+
+import com.google.common.base.Strings;
+import hudson.console.AnnotatedLargeText;
+import hudson.console.ConsoleNote;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import io.jenkins.blueocean.commons.JsonConverter;
+import io.jenkins.blueocean.commons.ServiceException;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Search of the logs of all steps of a pipeline run with a regular expression, <code>?q=</code>.
+ *
+ * Logs are searched in parallel on a pool shared by all searches, each search taking at most {@link #THREADS} tasks
+ * that search one step log after the other, so that the size of a run doesn't count against the queue of the pool.
+ * Logs are looked up by these tasks too, not before the response starts. Each matching line is written as soon as it's
+ * found, as a JSON object on its own line with the step id, line number, starting at 1, the line and
+ * <code>?context=</code> lines before and after it. Search stops at <code>?limit=</code> matches, or once it ran for
+ * {@link #MAX_SEARCH_TIME}, whichever comes first, a pattern that backtracks without end can't keep a search thread.
+ *
+ * Searches beyond what the pool can queue are refused with 503, for the client to try again later.
+ *
+ * @see PipelineRunImpl#getLogsearch()
+ */
+public class LogSearchResource {
+    /** Number of threads searching logs, for all searches */
+    static final int THREADS = Integer.getInteger("BLUEOCEAN_LOG_SEARCH_THREADS", 4);
+
+    /** Maximum number of matches of a search */
+    static final int MAX_MATCHES = Integer.getInteger("BLUEOCEAN_LOG_SEARCH_MAX_MATCHES", 1000);
+
+    /** Maximum number of search tasks waiting for a thread, for all searches, each search queues at most {@link #THREADS} */
+    static final int MAX_QUEUED = Integer.getInteger("BLUEOCEAN_LOG_SEARCH_MAX_QUEUED", 1000);
+
+    /** Milliseconds a search may run, it ends with the matches found until then */
+    static final long MAX_SEARCH_TIME = Long.getLong("BLUEOCEAN_LOG_SEARCH_MAX_TIME", 30000L);
+
+    static final int DEFAULT_CONTEXT = 2;
+    static final int MAX_CONTEXT = 10;
+
+    private static final Logger logger = LoggerFactory.getLogger(LogSearchResource.class);
+
+    private static final ExecutorService executor = createExecutor();
+
+    private final WorkflowRun run;
+
+    public LogSearchResource(WorkflowRun run) {
+        this.run = run;
+    }
+
+    public void doIndex(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        String q = req.getParameter("q");
+        if(Strings.isNullOrEmpty(q)){
+            throw new ServiceException.BadRequestExpception("q is required");
+        }
+        Pattern pattern;
+        try {
+            pattern = Pattern.compile(q);
+        } catch (PatternSyntaxException e) {
+            throw new ServiceException.BadRequestExpception("Invalid q: " + e.getDescription());
+        }
+        int context = Math.max(0, Math.min(MAX_CONTEXT, getInt(req, "context", DEFAULT_CONTEXT)));
+        int limit = Math.max(0, Math.min(MAX_MATCHES, getInt(req, "limit", MAX_MATCHES)));
+
+        List<String> stepIds = NodeGraphBuilder.NodeGraphBuilderFactory.getInstance(run).getPipelineNodeStepIds(null);
+        Search search = new Search(run, stepIds, pattern, context, limit, System.currentTimeMillis() + MAX_SEARCH_TIME);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            int tasks = Math.min(THREADS, stepIds.size());
+            for(int i = 0; i < tasks; i++){
+                search.pending.incrementAndGet();
+                try {
+                    futures.add(executor.submit(new StepSearch(search)));
+                } catch (RejectedExecutionException e) {
+                    search.pending.decrementAndGet();
+                    // tasks already queued search all steps, just slower
+                    if(futures.isEmpty()) {
+                        throw new ServiceException.ServiceUnavailableException("Too many log searches, try again later", e);
+                    }
+                    break;
+                }
+            }
+
+            rsp.setContentType("application/x-ndjson;charset=UTF-8");
+            rsp.setHeader("X-Accel-Buffering", "no");
+            Writer w = rsp.getWriter();
+            int written = 0;
+            while(written < limit && !search.isExpired()){
+                // read before polling, matches of finished searches are all queued by then
+                boolean finished = search.pending.get() == 0;
+                Match match = search.matches.poll(100, TimeUnit.MILLISECONDS);
+                if(match == null){
+                    if(finished){
+                        break;
+                    }
+                    continue;
+                }
+                w.write(JsonConverter.toJson(match));
+                w.write('\n');
+                w.flush();
+                written++;
+            }
+            w.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            search.cancelled = true;
+            for(Future<?> future: futures){
+                future.cancel(true);
+            }
+        }
+    }
+
+    private static int getInt(StaplerRequest req, String name, int defaultValue){
+        String value = req.getParameter(name);
+        if(value == null){
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new ServiceException.BadRequestExpception(String.format("Invalid %s: %s", name, value));
+        }
+    }
+
+    private static ExecutorService createExecutor(){
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(THREADS, THREADS, 10L, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(MAX_QUEUED),
+            new NamingThreadFactory(new DaemonThreadFactory(), "Blue Ocean log search"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /** State of a search shared by its tasks */
+    private static final class Search {
+        private final WorkflowRun run;
+        /** Ids of the steps not taken by a task yet */
+        private final Queue<String> steps;
+        private final Pattern pattern;
+        private final int context;
+        private final BlockingQueue<Match> matches = new LinkedBlockingQueue<>();
+        /** Number of tasks still searching */
+        private final AtomicInteger pending = new AtomicInteger();
+        /** Number of matches still wanted */
+        private final AtomicInteger remaining;
+        /** Time the search ends at, in milliseconds */
+        private final long deadline;
+        private volatile boolean cancelled;
+
+        private Search(WorkflowRun run, List<String> steps, Pattern pattern, int context, int limit, long deadline) {
+            this.run = run;
+            this.steps = new ConcurrentLinkedQueue<>(steps);
+            this.pattern = pattern;
+            this.context = context;
+            this.remaining = new AtomicInteger(limit);
+            this.deadline = deadline;
+        }
+
+        private boolean isExpired(){
+            return System.currentTimeMillis() > deadline;
+        }
+
+        /** Aborts the calling task if this search is cancelled, out of time or its thread is interrupted */
+        private void checkAborted(){
+            if(cancelled || Thread.currentThread().isInterrupted() || isExpired()){
+                throw new SearchAbortedException();
+            }
+        }
+
+        /** Takes one of the wanted matches, false if there are enough of them */
+        private boolean reserve(){
+            return remaining.getAndDecrement() > 0;
+        }
+    }
+
+    /** Line matching a search */
+    public static final class Match {
+        private final String step;
+        private final int line;
+        private final String text;
+        private final List<String> before;
+        private final List<String> after = new ArrayList<>();
+
+        private Match(String step, int line, String text, List<String> before) {
+            this.step = step;
+            this.line = line;
+            this.text = text;
+            this.before = before;
+        }
+
+        /** Id of the step whose log has the line */
+        public String getStep() {
+            return step;
+        }
+
+        /** Number of the line in the log of the step, starting at 1 */
+        public int getLine() {
+            return line;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        /** Lines before the matching line */
+        public List<String> getBefore() {
+            return before;
+        }
+
+        /** Lines after the matching line */
+        public List<String> getAfter() {
+            return after;
+        }
+    }
+
+    /** Searches logs of the steps of a search one after the other, until there are none left */
+    private static final class StepSearch implements Runnable {
+        private final Search search;
+
+        private StepSearch(Search search) {
+            this.search = search;
+        }
+
+        @Override
+        public void run() {
+            try {
+                String stepId;
+                while(!search.cancelled && search.remaining.get() > 0 && (stepId = search.steps.poll()) != null){
+                    AnnotatedLargeText log;
+                    try {
+                        log = PipelineNodeUtil.getLogText(search.run, stepId);
+                    } catch (IOException e) {
+                        logger.warn(String.format("Not searching log of step %s: %s", stepId, e.getMessage()), e);
+                        continue;
+                    }
+                    if(log != null){
+                        searchLog(stepId, log);
+                    }
+                }
+            } catch (SearchAbortedException e) {
+                search.cancelled = true;
+            } finally {
+                search.pending.decrementAndGet();
+            }
+        }
+
+        /** Searches the log of a step, matches are queued once lines after them are read */
+        private void searchLog(String stepId, AnnotatedLargeText log) {
+            // matches waiting for the lines after them
+            ArrayDeque<Match> open = new ArrayDeque<>();
+            ArrayDeque<String> before = new ArrayDeque<>(search.context + 1);
+            try (BufferedReader reader = new BufferedReader(log.readAll())) {
+                int lineNumber = 0;
+                String line;
+                while(!search.cancelled && (search.remaining.get() > 0 || !open.isEmpty())
+                    && (line = reader.readLine()) != null){
+                    lineNumber++;
+                    line = ConsoleNote.removeNotes(line);
+                    for(Match match: open){
+                        match.after.add(line);
+                    }
+                    while(!open.isEmpty() && open.peek().after.size() >= search.context){
+                        search.matches.add(open.poll());
+                    }
+                    if(search.pattern.matcher(new SearchedLine(search, line)).find() && search.reserve()){
+                        Match match = new Match(stepId, lineNumber, line, new ArrayList<>(before));
+                        if(search.context == 0){
+                            search.matches.add(match);
+                        }else{
+                            open.add(match);
+                        }
+                    }
+                    before.addLast(line);
+                    if(before.size() > search.context){
+                        before.removeFirst();
+                    }
+                }
+            } catch (IOException e) {
+                logger.warn(String.format("Failed to search log of step %s: %s", stepId, e.getMessage()), e);
+            } finally {
+                search.matches.addAll(open);
+            }
+        }
+    }
+
+    /**
+     * Line given to the matcher, checking every {@link #CHECK_INTERVAL} characters read whether the search is to be
+     * aborted, the only way to stop a matcher that backtracks.
+     */
+    private static final class SearchedLine implements CharSequence {
+        private static final int CHECK_INTERVAL = 1024;
+
+        private final Search search;
+        private final CharSequence line;
+        private int reads;
+
+        private SearchedLine(Search search, CharSequence line) {
+            this.search = search;
+            this.line = line;
+        }
+
+        @Override
+        public int length() {
+            return line.length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            if(++reads % CHECK_INTERVAL == 0){
+                search.checkAborted();
+            }
+            return line.charAt(index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new SearchedLine(search, line.subSequence(start, end));
+        }
+
+        @Override
+        public String toString() {
+            return line.toString();
+        }
+    }
+
+    private static final class SearchAbortedException extends RuntimeException {
+        private SearchAbortedException() {
+            super(null, null, false, false);
+        }
+    }
+}
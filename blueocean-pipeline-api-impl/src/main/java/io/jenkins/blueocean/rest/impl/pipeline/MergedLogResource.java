@@ -0,0 +1,215 @@
+package io.jenkins.blueocean.rest.impl.pipeline;
+
+import com.google.common.base.Charsets;
+import hudson.console.AnnotatedLargeText;
+import io.jenkins.blueocean.commons.ServiceException;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Plain text logs of all steps of a pipeline run, or of the steps of a stage or parallel branch, in a single
+ * response.
+ *
+ * Steps are written in graph order, each stage and parallel branch starting with a header line, steps that are in no
+ * stage or branch are written where they are without one. Only ids of the steps are taken from the graph. Logs of all
+ * steps are looked up before the response starts, a step whose log can't be looked up is left out, and then read one
+ * after the other straight into the response.
+ *
+ * @see PipelineNodeContainerImpl#getLog()
+ * @see PipelineNodeImpl#getLog()
+ */
+public class MergedLogResource {
+    private static final Logger logger = LoggerFactory.getLogger(MergedLogResource.class);
+
+    private final WorkflowRun run;
+    private final String nodeId;
+
+    /**
+     * @param nodeId id of the stage or parallel branch whose steps are written, null to write all steps of the run
+     */
+    public MergedLogResource(WorkflowRun run, @Nullable String nodeId) {
+        this.run = run;
+        this.nodeId = nodeId;
+    }
+
+    public void doIndex(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        NodeGraphBuilder builder = NodeGraphBuilder.NodeGraphBuilderFactory.getInstance(run);
+        List<FlowNodeWrapper> nodes = builder.getPipelineNodes();
+        Map<FlowNodeWrapper, List<FlowNodeWrapper>> branches = getBranches(nodes);
+        List<Part> parts = new ArrayList<>();
+        if(nodeId != null){
+            FlowNodeWrapper node = getNode(nodes, nodeId);
+            if(node == null){
+                throw new ServiceException.NotFoundException(String.format("Stage %s not found in pipeline %s.",
+                    nodeId, run.getParent().getName()));
+            }
+            addNode(builder, branches, node, parts);
+        }else{
+            addRun(builder, nodes, branches, parts);
+        }
+
+        if("true".equalsIgnoreCase(req.getParameter("download"))) {
+            rsp.setHeader("Content-Disposition", "attachment; filename=log.txt");
+        }
+        rsp.setContentType("text/plain;charset=UTF-8");
+        OutputStream out = rsp.getCompressedOutputStream(req);
+        for(Part part: parts){
+            if(part.header != null){
+                out.write((part.header + "\n").getBytes(Charsets.UTF_8));
+            }else{
+                part.log.writeLogTo(0, out);
+            }
+        }
+        out.close();
+    }
+
+    /**
+     * Adds stages and parallel branches that aren't in a stage, each where its first step is, and steps that are in
+     * none of them where they are.
+     */
+    private void addRun(NodeGraphBuilder builder, List<FlowNodeWrapper> nodes,
+                        Map<FlowNodeWrapper, List<FlowNodeWrapper>> branches, List<Part> parts){
+        List<FlowNodeWrapper> groups = new ArrayList<>();
+        Map<String, Integer> groupOfStep = new HashMap<>();
+        for(FlowNodeWrapper n: nodes){
+            // parallel branches of a stage are written with it
+            if(n.type != FlowNodeWrapper.NodeType.PARALLEL || getStage(n) == null){
+                for(String id: builder.getPipelineNodeStepIds(n.getId())){
+                    if(!groupOfStep.containsKey(id)){
+                        groupOfStep.put(id, groups.size());
+                    }
+                }
+                for(FlowNodeWrapper branch: getBranches(branches, n)){
+                    for(String id: builder.getPipelineNodeStepIds(branch.getId())){
+                        if(!groupOfStep.containsKey(id)){
+                            groupOfStep.put(id, groups.size());
+                        }
+                    }
+                }
+                groups.add(n);
+            }
+        }
+
+        int added = 0;
+        for(String id: builder.getPipelineNodeStepIds(null)){
+            Integer group = groupOfStep.get(id);
+            if(group == null){
+                addStep(id, parts);
+                continue;
+            }
+            // groups without steps go in graph order before the group of this step
+            while(added <= group){
+                addNode(builder, branches, groups.get(added++), parts);
+            }
+        }
+        while(added < groups.size()){
+            addNode(builder, branches, groups.get(added++), parts);
+        }
+    }
+
+    /** Adds steps of given stage and then those of each of its parallel branches */
+    private void addNode(NodeGraphBuilder builder, Map<FlowNodeWrapper, List<FlowNodeWrapper>> allBranches,
+                         FlowNodeWrapper node, List<Part> parts){
+        FlowNodeWrapper stage = node.type == FlowNodeWrapper.NodeType.PARALLEL ? getStage(node) : null;
+        if(node.type == FlowNodeWrapper.NodeType.STAGE){
+            parts.add(new Part("=== Stage: " + node.getDisplayName() + " ===", null));
+        }else{
+            parts.add(new Part("=== Branch: " + node.getDisplayName()
+                + (stage != null ? " (Stage: " + stage.getDisplayName() + ")" : "") + " ===", null));
+        }
+
+        List<FlowNodeWrapper> branches = getBranches(allBranches, node);
+
+        // steps of the branches are steps of the stage too, they're left for the branches
+        Set<String> branchSteps = new HashSet<>();
+        for(FlowNodeWrapper branch: branches){
+            branchSteps.addAll(builder.getPipelineNodeStepIds(branch.getId()));
+        }
+        for(String id: builder.getPipelineNodeStepIds(node.getId())){
+            if(!branchSteps.contains(id)){
+                addStep(id, parts);
+            }
+        }
+        for(FlowNodeWrapper branch: branches){
+            addNode(builder, allBranches, branch, parts);
+        }
+    }
+
+    /** Adds log of given step, if it has one that can be looked up */
+    private void addStep(String stepId, List<Part> parts){
+        try {
+            AnnotatedLargeText log = PipelineNodeUtil.getLogText(run, stepId);
+            if(log != null){
+                parts.add(new Part(null, log));
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.warn(String.format("Leaving out log of step %s of run %s: %s", stepId, run.getExternalizableId(),
+                e.getMessage()), e);
+        }
+    }
+
+    /** Parallel branches of each stage that has some, in graph order */
+    private static Map<FlowNodeWrapper, List<FlowNodeWrapper>> getBranches(List<FlowNodeWrapper> nodes){
+        Map<FlowNodeWrapper, List<FlowNodeWrapper>> branches = new HashMap<>();
+        for(FlowNodeWrapper n: nodes){
+            FlowNodeWrapper stage = n.type == FlowNodeWrapper.NodeType.PARALLEL ? getStage(n) : null;
+            if(stage != null){
+                List<FlowNodeWrapper> ofStage = branches.get(stage);
+                if(ofStage == null){
+                    ofStage = new ArrayList<>();
+                    branches.put(stage, ofStage);
+                }
+                ofStage.add(n);
+            }
+        }
+        return branches;
+    }
+
+    /** Parallel branches of given stage, none if it isn't a stage */
+    private static List<FlowNodeWrapper> getBranches(Map<FlowNodeWrapper, List<FlowNodeWrapper>> branches,
+                                                     FlowNodeWrapper node){
+        List<FlowNodeWrapper> ofStage = node.type == FlowNodeWrapper.NodeType.STAGE ? branches.get(node) : null;
+        return ofStage != null ? ofStage : Collections.<FlowNodeWrapper>emptyList();
+    }
+
+    /** Stage given parallel branch belongs to, null if it isn't in a stage */
+    private static @CheckForNull FlowNodeWrapper getStage(FlowNodeWrapper branch){
+        FlowNodeWrapper parent = branch.getFirstParent();
+        return parent != null && parent.type == FlowNodeWrapper.NodeType.STAGE ? parent : null;
+    }
+
+    private static @CheckForNull FlowNodeWrapper getNode(List<FlowNodeWrapper> nodes, String id){
+        for(FlowNodeWrapper node: nodes){
+            if(node.getId().equals(id)){
+                return node;
+            }
+        }
+        return null;
+    }
+
+    /** Header line or log of a step, in the order they're written */
+    private static final class Part {
+        private final String header;
+        private final AnnotatedLargeText log;
+
+        private Part(@Nullable String header, @Nullable AnnotatedLargeText log) {
+            this.header = header;
+            this.log = log;
+        }
+    }
+}
@@ -1,7 +1,7 @@
 package io.jenkins.blueocean.rest.impl.pipeline;
 
+import com.google.common.base.Function;
 import com.google.common.collect.Iterators;
-import com.google.common.collect.Lists;
 import hudson.Extension;
 import hudson.model.Item;
 import hudson.model.Job;
@@ -25,11 +25,16 @@ import io.jenkins.blueocean.rest.model.BlueRun;
 import io.jenkins.blueocean.rest.model.BlueRunContainer;
 import io.jenkins.blueocean.rest.model.Container;
 import io.jenkins.blueocean.rest.model.Resource;
+import io.jenkins.blueocean.rest.pageable.Pageables;
 import io.jenkins.blueocean.service.embedded.rest.AbstractPipelineImpl;
+import io.jenkins.blueocean.service.embedded.rest.AbstractRunImpl;
 import io.jenkins.blueocean.service.embedded.rest.BlueFavoriteResolver;
 import io.jenkins.blueocean.service.embedded.rest.BluePipelineFactory;
+import io.jenkins.blueocean.service.embedded.rest.ContainerFilter;
 import io.jenkins.blueocean.service.embedded.rest.FavoriteImpl;
 import io.jenkins.blueocean.service.embedded.rest.OrganizationImpl;
+import io.jenkins.blueocean.service.embedded.rest.RunSearch;
+import io.jenkins.blueocean.service.embedded.rest.RunSummaryIndex;
 import io.jenkins.blueocean.service.embedded.util.FavoriteUtil;
 import jenkins.branch.MultiBranchProject;
 import jenkins.scm.api.SCMHead;
@@ -55,8 +60,6 @@ import static io.jenkins.blueocean.rest.model.KnownCapabilities.JENKINS_MULTI_BR
 public class MultiBranchPipelineImpl extends BlueMultiBranchPipeline {
     /*package*/ final MultiBranchProject mbp;
 
-    private static final int MAX_MBP_RUNS_ROWS = Integer.getInteger("MAX_MBP_RUNS_ROWS", 250);
-
     private final Link self;
     public MultiBranchPipelineImpl(MultiBranchProject mbp) {
         this.mbp = mbp;
@@ -178,15 +181,8 @@ public class MultiBranchPipelineImpl extends BlueMultiBranchPipeline {
                     Arrays.sort(jobs, new Comparator<Job>() {
                         @Override
                         public int compare(Job o1, Job o2) {
-                            long t1 = 0;
-                            if(o1.getLastBuild() != null){
-                                t1 = o1.getLastBuild().getTimeInMillis() + o1.getLastBuild().getDuration();
-                            }
-
-                            long t2 = 0;
-                            if(o2.getLastBuild() != null){
-                                t2 = o2.getLastBuild().getTimeInMillis() + o2.getLastBuild().getDuration();
-                            }
+                            long t1 = getLatestRunTime(o1);
+                            long t2 = getLatestRunTime(o2);
 
                             if(t1<2){
                                 return -1;
@@ -242,9 +238,7 @@ public class MultiBranchPipelineImpl extends BlueMultiBranchPipeline {
         int count=0;
         for(Job j:jobs){
             if(pullRequests && isPullRequest(j) || !pullRequests && !isPullRequest(j)) {
-                j.getBuildStatusUrl();
-                Run run = j.getLastBuild();
-                if (run!=null && run.getResult() == result) {
+                if (getLatestResult(j) == result) {
                     count++;
                 }
             }
@@ -252,6 +246,26 @@ public class MultiBranchPipelineImpl extends BlueMultiBranchPipeline {
         return count;
     }
 
+    /** Result of the latest run of given branch, from its run index if it has one, null if there is no run */
+    private static Result getLatestResult(Job job){
+        RunSummaryIndex.Summary latest = RunSummaryIndex.getLatest(job);
+        if(latest != null){
+            return latest.getResult();
+        }
+        Run run = job.getLastBuild();
+        return run != null ? run.getResult() : null;
+    }
+
+    /** Time the latest run of given branch was scheduled plus its duration, from its run index if it has one */
+    private static long getLatestRunTime(Job job){
+        RunSummaryIndex.Summary latest = RunSummaryIndex.getLatest(job);
+        if(latest != null){
+            return latest.getEnQueueTimeInMillis() + latest.getDurationInMillis();
+        }
+        Run run = job.getLastBuild();
+        return run != null ? run.getTimeInMillis() + run.getDuration() : 0;
+    }
+
     private int countJobs(boolean pullRequests) {
         Collection<Job> jobs = mbp.getAllJobs();
         int counter = 0;
@@ -264,6 +278,12 @@ public class MultiBranchPipelineImpl extends BlueMultiBranchPipeline {
 
         return counter;
     }
+
+    @SuppressWarnings("unchecked")
+    private Collection<Job> getBranchJobs(){
+        return ContainerFilter.filter((Collection<Job>) mbp.getAllJobs());
+    }
+
     private boolean isPullRequest(Job job) {
         SCMHead head = SCMHead.HeadByItem.findHead(job);
         return head != null && head.getAction(ChangeRequestAction.class) != null;
@@ -286,91 +306,28 @@ public class MultiBranchPipelineImpl extends BlueMultiBranchPipeline {
 
             @Override
             public Iterator<BlueRun> iterator() {
-                throw new ServiceException.NotImplementedException("Not implemented");
+                return toBlueRuns(RunSearch.mergeRuns(getBranchJobs()));
             }
 
             /**
-             * Fetches maximum up to  MAX_MBP_RUNS_ROWS rows from each branch and does pagination on that.
-             *
-             * JVM property MAX_MBP_RUNS_ROWS can be used to tune this value to optimize performance for given setup
+             * Runs of all branches, latest started first. Runs of the branches are merged up to start + limit, only
+             * the runs of the page are made into {@link BlueRun}s.
              */
             @Override
             public Iterator<BlueRun> iterator(int start, int limit) {
-                List<BlueRun> c = new ArrayList<>();
-
-                List<BluePipeline> branches = Lists.newArrayList(getBranches().list());
-
-
-                sortBranchesByLatestRun(branches);
-
-                for(final BluePipeline b: getBranches()) {
-                    Iterator<BlueRun> it = b.getRuns().iterator(0,MAX_MBP_RUNS_ROWS);
-                    int count = 0;
-                    Iterators.skip(it, start);
-                    while(it.hasNext() && count++ < limit){
-                        c.add(it.next());
-                    }
-                }
+                return toBlueRuns(Pageables.slice(RunSearch.mergeRuns(getBranchJobs()), start, limit));
+            }
 
-                Collections.sort(c, new Comparator<BlueRun>() {
+            private Iterator<BlueRun> toBlueRuns(Iterator<Run> runs){
+                final Link branches = getBranches().getLink();
+                return Iterators.transform(runs, new Function<Run, BlueRun>() {
                     @Override
-                    public int compare(BlueRun o1, BlueRun o2) {
-                        return o2.getStartTime().compareTo(o1.getStartTime());
+                    public BlueRun apply(Run run) {
+                        return AbstractRunImpl.getBlueRun(run, new BranchImpl(run.getParent(), branches));
                     }
                 });
-
-                return c.iterator();
-            }
-
-            private boolean retry(boolean[] retries){
-                //if at least one of the branch needs retry we will retry it
-                for(boolean r: retries){
-                    if(r){
-                        return true;
-                    }
-                }
-                return false;
-            }
-
-            private int computeLimit(boolean[] retries, int limit){
-                //if at least one of the branch needs retry we will retry it
-                int count=0;
-                for(boolean r: retries){
-                    if(r){
-                        count++;
-                    }
-                }
-                if(count == 0){
-                    return 0;
-                }
-                return limit/count > 0 ? limit/count : 1;
             }
 
-            private int collectRuns(List<BluePipeline> branches, List<BlueRun> runs,
-                                    boolean[] retries, int remainingCount, int[] startIndexes, int[] limits){
-                int count = 0;
-                for (int i=0; i < branches.size(); i++) {
-                    BluePipeline b = branches.get(i);
-                    if(!retries[i]){
-                        continue;
-                    }
-                    Iterator<BlueRun> it = b.getRuns().iterator(startIndexes[i], limits[i]);
-                    int lcount = 0;
-                    while (it.hasNext() && count < remainingCount) {
-                        lcount++;
-                        count++;
-                        runs.add(it.next());
-                    }
-                    if (lcount < limits[i]) { //if its less than l
-                        retries[i] = false; //iterator already exhausted so lets not retry next time
-                    }else{
-                        startIndexes[i] = startIndexes[i]+lcount; //set the new start index for next time
-                    }
-                }
-                return count;
-            }
-
-
             @Override
             public BlueQueueItem create(StaplerRequest request) {
                 throw new ServiceException.NotImplementedException("This action is not supported");
@@ -382,14 +339,23 @@ public class MultiBranchPipelineImpl extends BlueMultiBranchPipeline {
         Collections.sort(branches, new Comparator<BluePipeline>() {
             @Override
             public int compare(BluePipeline o1, BluePipeline o2) {
-                Long t1 = o1.getLatestRun() != null ? o1.getLatestRun().getStartTime().getTime() : 0;
-                Long t2 = o2.getLatestRun() != null ? o2.getLatestRun().getStartTime().getTime() : 0;
+                Long t1 = getLatestRunStartTime(o1);
+                Long t2 = getLatestRunStartTime(o2);
 
                 return t2.compareTo(t1);
             }
         });
     }
 
+    /** Start time of the latest run of given branch, taken from its run index if it has one, 0 if there is no run */
+    private static long getLatestRunStartTime(BluePipeline branch){
+        if(branch instanceof BranchImpl){
+            BranchImpl.LatestRunTimes times = ((BranchImpl) branch).getLatestRunTimes();
+            return times != null ? times.startTime : 0;
+        }
+        return branch.getLatestRun() != null ? branch.getLatestRun().getStartTime().getTime() : 0;
+    }
+
     @Override
     public Collection<BlueActionProxy> getActions() {
         return PipelineImpl.getActionProxies(mbp.getAllActions(), this);
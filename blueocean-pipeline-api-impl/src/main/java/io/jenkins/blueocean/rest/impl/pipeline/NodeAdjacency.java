@@ -0,0 +1,125 @@
+package io.jenkins.blueocean.rest.impl.pipeline;
+
+import javax.annotation.CheckForNull;
+import java.util.AbstractList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Edges and parents of the nodes of a built graph, as int indexes into its nodes.
+ *
+ * Each node's edges are a range of {@link #edges}, starting at its offset in {@link #edgeOffsets} and ending at the
+ * offset of the next node, parents likewise. A graph of thousands of parallel branches holds four int arrays instead
+ * of two lists per node. {@link FlowNodeWrapper#getEdges()} and {@link FlowNodeWrapper#getParents()} of its nodes are
+ * views of these ranges.
+ *
+ * @see FlowNodeWrapper#compact(NodeAdjacency, int)
+ */
+final class NodeAdjacency {
+    private final FlowNodeWrapper[] nodes;
+    private final int[] edgeOffsets;
+    private final int[] edges;
+    private final int[] parentOffsets;
+    private final int[] parents;
+
+    private NodeAdjacency(FlowNodeWrapper[] nodes, int[] edgeOffsets, int[] edges, int[] parentOffsets, int[] parents) {
+        this.nodes = nodes;
+        this.edgeOffsets = edgeOffsets;
+        this.edges = edges;
+        this.parentOffsets = parentOffsets;
+        this.parents = parents;
+    }
+
+    /**
+     * Moves edges and parents of given nodes into an adjacency of their indexes, the nodes drop their own lists.
+     *
+     * @return null if a node has an edge or parent that isn't one of given nodes, nodes are then left as they are
+     */
+    static @CheckForNull NodeAdjacency compact(List<FlowNodeWrapper> graph){
+        FlowNodeWrapper[] nodes = graph.toArray(new FlowNodeWrapper[graph.size()]);
+        Map<String, Integer> indexes = new HashMap<>(nodes.length * 2);
+        int edgeCount = 0;
+        int parentCount = 0;
+        for(int i = 0; i < nodes.length; i++){
+            indexes.put(nodes[i].getId(), i);
+            edgeCount += nodes[i].getEdges().size();
+            parentCount += nodes[i].getParents().size();
+        }
+
+        int[] edgeOffsets = new int[nodes.length + 1];
+        int[] edges = new int[edgeCount];
+        int[] parentOffsets = new int[nodes.length + 1];
+        int[] parents = new int[parentCount];
+        int e = 0;
+        int p = 0;
+        for(int i = 0; i < nodes.length; i++){
+            edgeOffsets[i] = e;
+            for(String id: nodes[i].getEdges()){
+                Integer index = indexes.get(id);
+                if(index == null){
+                    return null;
+                }
+                edges[e++] = index;
+            }
+            parentOffsets[i] = p;
+            for(FlowNodeWrapper parent: nodes[i].getParents()){
+                Integer index = indexes.get(parent.getId());
+                if(index == null || nodes[index] != parent){
+                    return null;
+                }
+                parents[p++] = index;
+            }
+        }
+        edgeOffsets[nodes.length] = e;
+        parentOffsets[nodes.length] = p;
+
+        NodeAdjacency adjacency = new NodeAdjacency(nodes, edgeOffsets, edges, parentOffsets, parents);
+        for(int i = 0; i < nodes.length; i++){
+            nodes[i].compact(adjacency, i);
+        }
+        return adjacency;
+    }
+
+    /** Ids of the nodes given node has edges to */
+    List<String> edgesOf(final int node){
+        final int from = edgeOffsets[node];
+        final int size = edgeOffsets[node + 1] - from;
+        return new AbstractList<String>() {
+            @Override
+            public String get(int index) {
+                checkIndex(index, size);
+                return nodes[edges[from + index]].getId();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /** Parents of given node */
+    List<FlowNodeWrapper> parentsOf(final int node){
+        final int from = parentOffsets[node];
+        final int size = parentOffsets[node + 1] - from;
+        return new AbstractList<FlowNodeWrapper>() {
+            @Override
+            public FlowNodeWrapper get(int index) {
+                checkIndex(index, size);
+                return nodes[parents[from + index]];
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private static void checkIndex(int index, int size){
+        if(index < 0 || index >= size){
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+}
@@ -5,6 +5,8 @@ import io.jenkins.blueocean.rest.model.BluePipelineNode;
 import io.jenkins.blueocean.rest.model.BluePipelineStep;
 import org.jenkinsci.plugins.workflow.job.WorkflowRun;
 
+import javax.annotation.Nullable;
+import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -25,18 +27,42 @@ public interface NodeGraphBuilder {
     /** Gives all the steps in this pipeline */
     List<BluePipelineStep> getPipelineNodeSteps(Link parent);
 
+    /**
+     * Gives a page of the steps inside given nodeId, or of all steps in this pipeline if nodeId is null.
+     *
+     * Only steps of the page are created.
+     */
+    Iterator<BluePipelineStep> getPipelineNodeSteps(@Nullable String nodeId, Link parent, int start, int limit);
+
+    /**
+     * Gives ids of the steps inside given nodeId, or of all steps in this pipeline if nodeId is null, in the same order
+     * as {@link #getPipelineNodeSteps(String, Link, int, int)} but without creating the steps.
+     */
+    List<String> getPipelineNodeStepIds(@Nullable String nodeId);
+
     /** Give the step for given id */
     BluePipelineStep getPipelineNodeStep(String id, Link parent);
 
     /** Create union of last successful run and this partial run */
     List<BluePipelineNode> union(List<FlowNodeWrapper> lastBuildGraph, Link parent);
 
-    /** Factory to give legacy vs bismuth API based DAG builder */
+    /**
+     * Factory to give legacy vs bismuth API based DAG builder.
+     *
+     * Bismuth API based graphs are shared through {@link PipelineNodeGraphCache}, callers must not modify them.
+     */
     final class NodeGraphBuilderFactory{
         public static final NodeGraphBuilder getInstance(WorkflowRun run){
             return Boolean.getBoolean("LEGACY_PIPELINE_NODE_PARSER")
                 ? new PipelineNodeGraphBuilder(run)
-                : new PipelineNodeGraphVisitor(run);
+                : PipelineNodeGraphCache.get().getGraph(run);
+        }
+
+        /** Gives graph nodes of given build that is the last successful build of its job */
+        public static final List<FlowNodeWrapper> getLastSuccessfulNodes(WorkflowRun lastSuccessfulRun){
+            return Boolean.getBoolean("LEGACY_PIPELINE_NODE_PARSER")
+                ? new PipelineNodeGraphBuilder(lastSuccessfulRun).getPipelineNodes()
+                : PipelineNodeGraphCache.get().getLastSuccessfulNodes(lastSuccessfulRun);
         }
     }
 }
@@ -1,6 +1,8 @@
 package io.jenkins.blueocean.rest.impl.pipeline;
 
 import com.cloudbees.hudson.plugins.folder.computed.FolderComputation;
+import com.google.common.base.Supplier;
+import hudson.console.AnnotatedLargeText;
 import hudson.model.Cause;
 import hudson.model.CauseAction;
 import io.jenkins.blueocean.rest.Reachable;
@@ -150,7 +152,12 @@ public class OrganizationFolderRunImpl extends BlueRun {
 
     @Override
     public Object getLog() {
-        return new LogResource(folderComputation.getLogText());
+        return new LogResource(new Supplier<AnnotatedLargeText>() {
+            @Override
+            public AnnotatedLargeText get() {
+                return folderComputation.getLogText();
+            }
+        }, folderComputation.getLogFile());
     }
 
     @Override
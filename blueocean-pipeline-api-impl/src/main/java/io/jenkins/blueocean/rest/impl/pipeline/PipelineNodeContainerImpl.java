@@ -1,53 +1,153 @@
 package io.jenkins.blueocean.rest.impl.pipeline;
 
+import com.google.common.base.Supplier;
 import hudson.model.Result;
 import io.jenkins.blueocean.commons.ServiceException;
 import io.jenkins.blueocean.rest.hal.Link;
+import io.jenkins.blueocean.rest.model.BlueActionProxy;
+import io.jenkins.blueocean.rest.model.BlueInputStep;
 import io.jenkins.blueocean.rest.model.BluePipelineNode;
 import io.jenkins.blueocean.rest.model.BluePipelineNodeContainer;
+import io.jenkins.blueocean.rest.model.BluePipelineStepContainer;
+import io.jenkins.blueocean.rest.model.BlueRun;
+import io.jenkins.blueocean.rest.pageable.ETagged;
+import io.jenkins.blueocean.rest.pageable.PagedResponse;
+import io.jenkins.blueocean.rest.pageable.Pageables;
+import org.jenkinsci.plugins.workflow.flow.FlowExecution;
 import org.jenkinsci.plugins.workflow.job.WorkflowJob;
 import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.kohsuke.stapler.HttpResponse;
+import org.kohsuke.stapler.Stapler;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
 /**
+ * Nodes of a pipeline run.
+ *
+ * Listing nodes with <code>?since={token}</code> gives only nodes changed since the response that had this token.
+ * Each listing carries its token in {@link #TOKEN_HEADER}, and {@link #DELTA_HEADER} tells whether it has only changed
+ * nodes or all of them, the latter when the token is unknown, for example after restart, or a node went away.
+ *
+ * Nodes are listed with a strong ETag, taken from the run alone, and from the count of new flow heads of a running
+ * build, so a request matched by it is answered without looking at the graph. Such an answer has no body and so no token, the client keeps the one it got
+ * with the body. Steps of a node are listed the same way, a steps listing matched by its ETag only looks up the flow
+ * node of that id.
+ *
+ * Logs of all steps, ordered by stages and parallel branches, are at <code>log/</code>.
+ *
  * @author Vivek Pandey
+ * @see PipelineNodeGraphVersions
  */
-public class PipelineNodeContainerImpl extends BluePipelineNodeContainer {
+public class PipelineNodeContainerImpl extends BluePipelineNodeContainer implements ETagged {
+    public static final String TOKEN_HEADER = "X-Blueocean-Nodes-Token";
+    public static final String DELTA_HEADER = "X-Blueocean-Nodes-Delta";
+
     private final WorkflowRun run;
     private final Map<String, BluePipelineNode> nodeMap = new HashMap<>();
 
-    List<BluePipelineNode> nodes = new ArrayList<>();
+    private List<BluePipelineNode> nodes;
     private final Link self;
 
     public PipelineNodeContainerImpl(WorkflowRun run, Link parentLink) {
         this.run = run;
         this.self = parentLink.rel("nodes");
+    }
 
-        WorkflowJob job = run.getParent();
-        NodeGraphBuilder graphBuilder = NodeGraphBuilder.NodeGraphBuilderFactory.getInstance(run);
-
-        //If build either failed or is in progress then return union with last successful pipeline run
-        if (run.getResult() != Result.SUCCESS
-            && job.getLastSuccessfulBuild() != null
-            && Integer.valueOf(job.getLastSuccessfulBuild().getId()) < Integer.valueOf(run.getId())) {
+    /** Nodes of the run, built on first use */
+    synchronized List<BluePipelineNode> nodes() {
+        if(nodes == null) {
+            NodeGraphBuilder graphBuilder = NodeGraphBuilder.NodeGraphBuilderFactory.getInstance(run);
 
-            NodeGraphBuilder pastBuildGraph = NodeGraphBuilder.NodeGraphBuilderFactory.getInstance(job.getLastSuccessfulBuild());
-            this.nodes = graphBuilder.union(pastBuildGraph.getPipelineNodes(), getLink());
-        } else {
-            this.nodes = graphBuilder.getPipelineNodes(getLink());
+            //If build either failed or is in progress then return union with last successful pipeline run
+            WorkflowRun lastSuccessfulRun = getUnionRun();
+            if (lastSuccessfulRun != null) {
+                this.nodes = graphBuilder.union(NodeGraphBuilder.NodeGraphBuilderFactory.getLastSuccessfulNodes(lastSuccessfulRun),
+                    getLink());
+            } else {
+                this.nodes = graphBuilder.getPipelineNodes(getLink());
+            }
+            for (BluePipelineNode node : nodes) {
+                nodeMap.put(node.getId(), node);
+            }
         }
-        for (BluePipelineNode node : nodes) {
-            nodeMap.put(node.getId(), node);
+        return nodes;
+    }
+
+    /** Last successful run whose nodes are shown as future nodes of this run, null if there is none */
+    private WorkflowRun getUnionRun() {
+        WorkflowJob job = run.getParent();
+        WorkflowRun lastSuccessfulRun = run.getResult() != Result.SUCCESS ? job.getLastSuccessfulBuild() : null;
+        return lastSuccessfulRun != null && lastSuccessfulRun.getNumber() < run.getNumber() ? lastSuccessfulRun : null;
+    }
+
+    /**
+     * Nodes of a completed run change only if it's shown with future nodes of a last successful run and that
+     * changes, for example when it's deleted. Those of a running build are the ones of its cached graph, which is
+     * built again only on a new flow head or input, as counted by its graph listener.
+     */
+    @Override
+    public String getETag() {
+        WorkflowRun lastSuccessfulRun = getUnionRun();
+        String union = lastSuccessfulRun == null ? ""
+            : lastSuccessfulRun.getExternalizableId() + "@" + lastSuccessfulRun.getTimeInMillis();
+        if(run.isBuilding()) {
+            return Boolean.getBoolean("LEGACY_PIPELINE_NODE_PARSER") ? null
+                : PipelineNodeUtil.getRunningETag(run, PipelineNodeGraphCache.get().getRunningVersion(run), "nodes", union);
         }
+        return PipelineNodeUtil.getETag(run, "nodes", union);
     }
 
+    /**
+     * Node of given id. For a GET of the steps of a node of a completed run that the request has already, as its ETag
+     * tells, gives a node that's looked up only if something else than its steps is asked for, once its flow node is
+     * found.
+     */
     @Override
     public BluePipelineNode get(String name) {
+        StaplerRequest request = Stapler.getCurrentRequest();
+        if(request != null && isStepsNotModified(request, name)){
+            return new NodeRef(name);
+        }
+        return find(name);
+    }
+
+    private boolean isStepsNotModified(StaplerRequest request, String name) {
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        String rest = request.getRestOfPath();
+        if(ifNoneMatch == null || !"GET".equalsIgnoreCase(request.getMethod())
+            || !(rest.equals("/steps") || rest.equals("/steps/"))){
+            return false;
+        }
+        String eTag = PagedResponse.Processor.getETag(request, new PipelineStepContainerImpl(name, getLink().rel(name), run));
+        if(eTag == null){
+            return false;
+        }
+        // only the very tag, not *, which any name would match
+        boolean matched = false;
+        for(String tag: ifNoneMatch.split(",")){
+            matched |= tag.trim().equals(eTag);
+        }
+        if(!matched){
+            return false;
+        }
+        try {
+            FlowExecution execution = run.getExecution();
+            return execution != null && execution.getNode(name) != null;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private BluePipelineNode find(String name) {
+        nodes();
         if(nodeMap.get(name) != null){
             return nodeMap.get(name);
         }
@@ -57,11 +157,138 @@ public class PipelineNodeContainerImpl extends BluePipelineNodeContainer {
 
     @Override
     public Iterator<BluePipelineNode> iterator() {
-        return nodes.iterator();
+        return nodes().iterator();
+    }
+
+    @Override
+    public Iterator<BluePipelineNode> iterator(int start, int limit) {
+        StaplerRequest request = Stapler.getCurrentRequest();
+        StaplerResponse response = Stapler.getCurrentResponse();
+        if(request == null || response == null){
+            return super.iterator(start, limit);
+        }
+        PipelineNodeGraphVersions.Changes changes = PipelineNodeGraphVersions.get()
+            .update(run, getGraphKey(), nodesSupplier(), request.getParameter("since"));
+        response.setHeader(TOKEN_HEADER, changes.token);
+        response.setHeader(DELTA_HEADER, Boolean.toString(changes.delta));
+        return Pageables.slice(changes.nodes.iterator(), start, limit);
+    }
+
+    private Supplier<List<BluePipelineNode>> nodesSupplier() {
+        return new Supplier<List<BluePipelineNode>>() {
+            @Override
+            public List<BluePipelineNode> get() {
+                return nodes();
+            }
+        };
+    }
+
+    /**
+     * Identifies the graph nodes are built from, along with the last successful run they're shown with, null if the
+     * graph isn't cached.
+     */
+    private String getGraphKey() {
+        if(Boolean.getBoolean("LEGACY_PIPELINE_NODE_PARSER")){
+            return null;
+        }
+        long serial = PipelineNodeGraphCache.get().getSerial(run);
+        if(serial < 0){
+            return null;
+        }
+        WorkflowRun lastSuccessfulRun = getUnionRun();
+        return lastSuccessfulRun == null ? Long.toString(serial)
+            : serial + ":" + lastSuccessfulRun.getExternalizableId() + "@" + lastSuccessfulRun.getTimeInMillis();
+    }
+
+    /** Logs of all steps of the run, in graph order, in one response */
+    public MergedLogResource getLog() {
+        return new MergedLogResource(run, null);
     }
 
     @Override
     public Link getLink() {
         return self;
     }
+
+    /** Node whose flow node is there, looked up only when more than its id, steps or log is asked for */
+    private final class NodeRef extends BluePipelineNode {
+        private final String id;
+        private BluePipelineNode node;
+
+        private NodeRef(String id) {
+            this.id = id;
+        }
+
+        private synchronized BluePipelineNode node() {
+            if(node == null){
+                node = find(id);
+            }
+            return node;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public String getDisplayName() {
+            return node().getDisplayName();
+        }
+
+        @Override
+        public BlueRun.BlueRunResult getResult() {
+            return node().getResult();
+        }
+
+        @Override
+        public BlueRun.BlueRunState getStateObj() {
+            return node().getStateObj();
+        }
+
+        @Override
+        public Date getStartTime() {
+            return node().getStartTime();
+        }
+
+        @Override
+        public List<Edge> getEdges() {
+            return node().getEdges();
+        }
+
+        @Override
+        public Long getDurationInMillis() {
+            return node().getDurationInMillis();
+        }
+
+        @Override
+        public Object getLog() {
+            return new MergedLogResource(run, id);
+        }
+
+        @Override
+        public BluePipelineStepContainer getSteps() {
+            return new PipelineStepContainerImpl(id, getLink(), run);
+        }
+
+        @Override
+        public Collection<BlueActionProxy> getActions() {
+            return node().getActions();
+        }
+
+        @Override
+        public BlueInputStep getInputStep() {
+            return node().getInputStep();
+        }
+
+        @Override
+        public HttpResponse submitInputStep(StaplerRequest request) {
+            return node().submitInputStep(request);
+        }
+
+        @Override
+        public Link getLink() {
+            return self.rel(id);
+        }
+    }
 }
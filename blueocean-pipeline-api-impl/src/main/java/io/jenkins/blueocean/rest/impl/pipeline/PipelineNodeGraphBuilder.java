@@ -1,24 +1,32 @@
 package io.jenkins.blueocean.rest.impl.pipeline;
 
+import com.google.common.base.Function;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Iterators;
 import io.jenkins.blueocean.rest.hal.Link;
 import io.jenkins.blueocean.rest.model.BluePipelineNode;
 import io.jenkins.blueocean.rest.model.BluePipelineStep;
 import io.jenkins.blueocean.rest.model.BlueRun;
+import io.jenkins.blueocean.rest.pageable.Pageables;
 import org.jenkinsci.plugins.workflow.actions.LabelAction;
 import org.jenkinsci.plugins.workflow.actions.NotExecutedNodeAction;
 import org.jenkinsci.plugins.workflow.actions.StageAction;
 import org.jenkinsci.plugins.workflow.actions.TimingAction;
 import org.jenkinsci.plugins.workflow.cps.nodes.StepAtomNode;
+import org.jenkinsci.plugins.workflow.cps.nodes.StepEndNode;
 import org.jenkinsci.plugins.workflow.graph.FlowGraphWalker;
 import org.jenkinsci.plugins.workflow.graph.FlowNode;
 import org.jenkinsci.plugins.workflow.job.WorkflowRun;
 import org.jenkinsci.plugins.workflow.pipelinegraphanalysis.TimingInfo;
 import org.jenkinsci.plugins.workflow.support.visualization.table.FlowGraphTable;
 
+import javax.annotation.Nullable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -41,6 +49,22 @@ public class PipelineNodeGraphBuilder implements NodeGraphBuilder{
     private final Map<FlowNode, List<FlowNode>> parentToChildrenMap = new LinkedHashMap<>();
     private final Map<FlowNode, NodeRunStatus> nodeStatusMap = new LinkedHashMap<>();
 
+    /** Position of each node in {@link #sortedNodes}, keyed by node id */
+    private final Map<String, Integer> nodeIndex = new HashMap<>();
+
+    /** Block end node of each block start node, keyed by start node id */
+    private final Map<String, FlowNode> blockEndNodes = new HashMap<>();
+
+    /**
+     * Pre and post order numbers of nodes in the tree formed by their first parents, by position in
+     * {@link #sortedNodes}. A node is child of another if it's inside its pre/post order interval.
+     */
+    private int[] preOrder;
+    private int[] postOrder;
+
+    /** Closest parallel branch whose block encloses each node, by position in {@link #sortedNodes}, -1 if none */
+    private int[] enclosingBranches;
+
 
     public PipelineNodeGraphBuilder(WorkflowRun run) {
         this.run = run;
@@ -65,10 +89,126 @@ public class PipelineNodeGraphBuilder implements NodeGraphBuilder{
         }
         this.sortedNodes = Collections.unmodifiableList(new ArrayList<>(nodeTreeSet));
 //        dumpNodes(sortedNodes);
+        index();
         build();
 
     }
 
+    /**
+     * Indexes {@link #sortedNodes} so that block end, position, child and enclosing parallel branch lookups don't
+     * need to scan them.
+     */
+    private void index(){
+        int n = sortedNodes.size();
+        for(int i = 0; i < n; i++){
+            FlowNode node = sortedNodes.get(i);
+            nodeIndex.put(node.getId(), i);
+            if(node instanceof StepEndNode){
+                blockEndNodes.put(((StepEndNode) node).getStartNode().getId(), node);
+            }
+        }
+
+        // tree of first parents, as children ranges in one array
+        int[] firstParents = new int[n];
+        int[] childrenStart = new int[n + 1];
+        for(int i = 0; i < n; i++){
+            List<FlowNode> parents = sortedNodes.get(i).getParents();
+            Integer p = parents.isEmpty() ? null : nodeIndex.get(parents.get(0).getId());
+            firstParents[i] = p == null ? -1 : p;
+            if(p != null){
+                childrenStart[p + 1]++;
+            }
+        }
+        for(int i = 0; i < n; i++){
+            childrenStart[i + 1] += childrenStart[i];
+        }
+        int[] children = new int[childrenStart[n]];
+        int[] nextChild = Arrays.copyOf(childrenStart, n);
+        for(int i = 0; i < n; i++){
+            if(firstParents[i] >= 0){
+                children[nextChild[firstParents[i]]++] = i;
+            }
+        }
+
+        // number nodes in pre and post order, visiting parents before children
+        preOrder = new int[n];
+        postOrder = new int[n];
+        int[] visitOrder = new int[n];
+        int[] stack = new int[n];
+        System.arraycopy(childrenStart, 0, nextChild, 0, n);
+        int pre = 0;
+        int post = 0;
+        for(int root = 0; root < n; root++){
+            if(firstParents[root] >= 0){
+                continue;
+            }
+            int top = 0;
+            stack[top++] = root;
+            visitOrder[pre] = root;
+            preOrder[root] = pre++;
+            while(top > 0){
+                int v = stack[top - 1];
+                if(nextChild[v] < childrenStart[v + 1]){
+                    int c = children[nextChild[v]++];
+                    stack[top++] = c;
+                    visitOrder[pre] = c;
+                    preOrder[c] = pre++;
+                }else{
+                    postOrder[v] = post++;
+                    top--;
+                }
+            }
+        }
+
+        // Blocks enclosing a node are the ones enclosing its parent, plus its parent if that's a branch start. They
+        // nest, so the closest one enclosing the node is found following closest enclosing branch of each branch.
+        enclosingBranches = new int[n];
+        for(int i = 0; i < pre; i++){
+            int v = visitOrder[i];
+            int p = firstParents[v];
+            int b = -1;
+            if(p >= 0){
+                b = isParallelBranch(sortedNodes.get(p)) ? p : enclosingBranches[p];
+                while(b >= 0 && !isInBlock(sortedNodes.get(b), getStepEndNode(sortedNodes.get(b)), sortedNodes.get(v))){
+                    b = enclosingBranches[b];
+                }
+            }
+            enclosingBranches[v] = b;
+        }
+    }
+
+    /** Same as {@link PipelineNodeUtil#isNestedInParallel(List, FlowNode)} */
+    private boolean isNestedInParallel(FlowNode node){
+        Integer i = nodeIndex.get(node.getId());
+        return i != null && enclosingBranches[i] >= 0;
+    }
+
+    /** Same as {@link PipelineNodeUtil#getStepEndNode(List, FlowNode)} */
+    private FlowNode getStepEndNode(FlowNode startNode){
+        return startNode == null ? null : blockEndNodes.get(startNode.getId());
+    }
+
+    /** Same as {@link PipelineNodeUtil#isInBlock(FlowNode, FlowNode, FlowNode)} */
+    private boolean isInBlock(FlowNode startNode, FlowNode endNode, FlowNode c){
+        return isChildOf(startNode, c) && isChildOf(c, endNode);
+    }
+
+    /** Same as {@link PipelineNodeUtil#isChildOf(FlowNode, FlowNode)}, whether parent is a first parent ancestor */
+    private boolean isChildOf(FlowNode parent, FlowNode child){
+        if(parent == null || child == null){
+            return false;
+        }
+        Integer p = nodeIndex.get(parent.getId());
+        Integer c = nodeIndex.get(child.getId());
+        return p != null && c != null
+            && preOrder[p] < preOrder[c] && postOrder[c] < postOrder[p];
+    }
+
+    private int indexOf(FlowNode node){
+        Integer i = node == null ? null : nodeIndex.get(node.getId());
+        return i == null ? -1 : i;
+    }
+
     private void build(){
         FlowNode previousStage = null;
         FlowNode previousBranch = null;
@@ -77,7 +217,7 @@ public class PipelineNodeGraphBuilder implements NodeGraphBuilder{
             if(!isStage(node) && !isParallelBranch(node)){
                 continue;
             }
-            boolean nestedInParallel = PipelineNodeUtil.isNestedInParallel(sortedNodes, node);
+            boolean nestedInParallel = isNestedInParallel(node);
             if (isStage(node) && !nestedInParallel) { //Stage but not nested
                 addChild(node, null);
                 if (previousBranch != null) {
@@ -98,9 +238,9 @@ public class PipelineNodeGraphBuilder implements NodeGraphBuilder{
                 }
 
                 if(node.getAction(LabelAction.class) != null && node.getAction(StageAction.class) == null){
-                    FlowNode endNode = PipelineNodeUtil.getStepEndNode(sortedNodes, node);
-                    if(endNode == null){
-                        endNode = PipelineNodeUtil.getEndNode(sortedNodes,node);
+                    FlowNode endNode = getStepEndNode(node);
+                    if(endNode == null && node instanceof StepAtomNode){
+                        endNode = node;
                     }
                     if(endNode != null){
                         nodeStatusMap.put(node, new NodeRunStatus(endNode));
@@ -114,7 +254,7 @@ public class PipelineNodeGraphBuilder implements NodeGraphBuilder{
                 if(previousStage != null) {
                     addChild(previousStage, node);
                 }
-                FlowNode endNode = PipelineNodeUtil.getStepEndNode(sortedNodes,node);
+                FlowNode endNode = getStepEndNode(node);
                 if (endNode != null) {
                     nodeStatusMap.put(node, new NodeRunStatus(endNode));
                 }else{
@@ -134,12 +274,8 @@ public class PipelineNodeGraphBuilder implements NodeGraphBuilder{
     }
 
     public FlowNode getNodeById(String id){
-        for(FlowNode node: sortedNodes){
-            if(node.getId().equals(id)){
-                return node;
-            }
-        }
-        return null;
+        Integer i = nodeIndex.get(id);
+        return i == null ? null : sortedNodes.get(i);
     }
 
     public List<FlowNode> getSteps(FlowNode node){
@@ -153,14 +289,14 @@ public class PipelineNodeGraphBuilder implements NodeGraphBuilder{
 
     public List<FlowNode> getStageSteps(FlowNode p){
         List<FlowNode> steps = new ArrayList<>();
-        int i = sortedNodes.indexOf(p);
+        int i = indexOf(p);
         if(i>=0 && isStage(p)){
-            FlowNode end = PipelineNodeUtil.getStepEndNode(sortedNodes,p);
+            FlowNode end = getStepEndNode(p);
             //collect steps till next stage is found otherwise till end of pipeline
             for(int j=i+1; j < sortedNodes.size(); j++){
                 FlowNode c = sortedNodes.get(j);
                 //if the stage is not nested ignore them, because we want to include steps from nested stages
-                if(isStage(c) && !PipelineNodeUtil.isInBlock(p,end,c)){
+                if(isStage(c) && !isInBlock(p,end,c)){
                     break;
                 }
                 if(c instanceof StepAtomNode) {
@@ -183,10 +319,10 @@ public class PipelineNodeGraphBuilder implements NodeGraphBuilder{
 
     public List<FlowNode> getParallelBranchSteps(FlowNode p){
         List<FlowNode> steps = new ArrayList<>();
-        int i = sortedNodes.indexOf(p);
+        int i = indexOf(p);
         FlowNode prev=p;
         if(i>=0 && isParallelBranch(p)){
-            FlowNode end = PipelineNodeUtil.getStepEndNode(sortedNodes,p);
+            FlowNode end = getStepEndNode(p);
             for(int j=i+1; j < sortedNodes.size(); j++){
                 FlowNode c = sortedNodes.get(j);
                 if(c.equals(end)){
@@ -197,14 +333,14 @@ public class PipelineNodeGraphBuilder implements NodeGraphBuilder{
                     continue;
                 }
                 //we take only the legal children
-                if(!PipelineNodeUtil.isInBlock(p, end, c) && !isParentOf(c,prev)){
+                if(!isInBlock(p, end, c) && !isParentOf(c,prev)){
                     continue;
                 }
                 if(c instanceof StepAtomNode) {
                     steps.add(c);
                     prev=c;
 
-                    FlowNode endNode = PipelineNodeUtil.getStepEndNode(sortedNodes,c);
+                    FlowNode endNode = getStepEndNode(c);
                     if (endNode != null) {
                         nodeStatusMap.put(c, new NodeRunStatus(endNode));
                     }
@@ -261,20 +397,43 @@ public class PipelineNodeGraphBuilder implements NodeGraphBuilder{
     @Override
     public List<BluePipelineStep> getPipelineNodeSteps(String nodeId, Link parent) {
         List<BluePipelineStep> steps = new ArrayList<>();
-        List<FlowNode> flowNodes = new ArrayList<>();
-        if(nodeId == null){
-            flowNodes.addAll(getAllSteps());
-        }else{
-            flowNodes.addAll(getSteps(getNodeById(nodeId)));
-        }
-        for(FlowNode node: flowNodes){
-            steps.add(new PipelineStepImpl(new FlowNodeWrapper(node,
-                new NodeRunStatus(node),
-                new TimingInfo(getDurationInMillis(node), 0, 0), run), parent));
+        for(FlowNode node: getStepNodes(nodeId)){
+            steps.add(createStep(node, parent));
         }
         return steps;
     }
 
+    @Override
+    public Iterator<BluePipelineStep> getPipelineNodeSteps(@Nullable String nodeId, final Link parent, int start, int limit) {
+        // status and duration are computed only for steps of the page
+        Iterator<FlowNode> page = Pageables.slice(getStepNodes(nodeId).iterator(), start, limit);
+        return Iterators.transform(page, new Function<FlowNode, BluePipelineStep>() {
+            @Override
+            public BluePipelineStep apply(FlowNode node) {
+                return createStep(node, parent);
+            }
+        });
+    }
+
+    @Override
+    public List<String> getPipelineNodeStepIds(@Nullable String nodeId) {
+        List<String> ids = new ArrayList<>();
+        for(FlowNode node: getStepNodes(nodeId)){
+            ids.add(node.getId());
+        }
+        return ids;
+    }
+
+    private List<FlowNode> getStepNodes(String nodeId){
+        return nodeId == null ? getAllSteps() : getSteps(getNodeById(nodeId));
+    }
+
+    private BluePipelineStep createStep(FlowNode node, Link parent){
+        return new PipelineStepImpl(new FlowNodeWrapper(node,
+            new NodeRunStatus(node),
+            new TimingInfo(getDurationInMillis(node), 0, 0), run), parent);
+    }
+
     @Override
     public List<BluePipelineStep> getPipelineNodeSteps(Link parent) {
         return getPipelineNodeSteps(null, parent);
@@ -282,10 +441,9 @@ public class PipelineNodeGraphBuilder implements NodeGraphBuilder{
 
     @Override
     public BluePipelineStep getPipelineNodeStep(String id, Link parent) {
-        for(BluePipelineStep step: getPipelineNodeSteps(parent)){
-            if(step.getId().equals(id)){
-                return step;
-            }
+        FlowNode node = getNodeById(id);
+        if(node instanceof StepAtomNode && !isStage(node)){
+            return createStep(node, parent);
         }
         return null;
     }
@@ -333,7 +491,7 @@ public class PipelineNodeGraphBuilder implements NodeGraphBuilder{
                 FlowNodeWrapper n = new FlowNodeWrapper(futureNode.getNode(),
                     new NodeRunStatus(null,null),
                     new TimingInfo(), run);
-                n.addEdges(futureNode.edges);
+                n.addEdges(futureNode.getEdges());
                 n.addParents(futureNode.getParents());
                 currentNodes.add(n);
             }
@@ -381,12 +539,12 @@ public class PipelineNodeGraphBuilder implements NodeGraphBuilder{
                 }
             }
         }else if(isParallelBranch(node)){
-            FlowNode endNode = PipelineNodeUtil.getStepEndNode(sortedNodes,node);
+            FlowNode endNode = getStepEndNode(node);
             if(endNode != null){
                 return TimingAction.getStartTime(endNode) - startTime;
             }
         }else if(node instanceof StepAtomNode){
-            int i = sortedNodes.indexOf(node);
+            int i = indexOf(node);
             if(i >=0 && i+1 < sortedNodes.size()){
                 return TimingAction.getStartTime(sortedNodes.get(i+1)) - startTime;
             }
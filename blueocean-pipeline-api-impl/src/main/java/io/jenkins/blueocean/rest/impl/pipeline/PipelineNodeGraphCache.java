@@ -0,0 +1,240 @@
+package io.jenkins.blueocean.rest.impl.pipeline;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import hudson.Extension;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+import jenkins.util.Timer;
+import org.jenkinsci.plugins.workflow.flow.FlowExecution;
+import org.jenkinsci.plugins.workflow.flow.GraphListener;
+import org.jenkinsci.plugins.workflow.graph.FlowNode;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.jenkinsci.plugins.workflow.support.steps.input.InputAction;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per run cache of pipeline node graphs.
+ *
+ * Graph of a running build is kept until its {@link FlowExecution} reports a new head through {@link GraphListener},
+ * so repeated polling of a running build does not re-walk the flow graph unless something changed. When it did, the
+ * new graph takes stages and parallel branches that had already ended from the one it replaces, only the walk and the
+ * stages still running cost anything. Graph of a completed build is immutable and is kept until evicted.
+ *
+ * Cache size is bounded by total number of graph nodes held, see {@link #MAX_CACHED_NODES}. Graph of a completed
+ * build is also persisted as {@link PipelineNodeGraphSnapshot} once finalized, so that it's restored from there
+ * instead of walking the flow graph again after it was evicted or Jenkins restarted.
+ */
+public class PipelineNodeGraphCache {
+    /** Maximum number of stage, parallel and step nodes held by the cache across all runs, steps count once indexed */
+    static final long MAX_CACHED_NODES = Long.getLong("BLUEOCEAN_NODE_GRAPH_CACHE_MAX_NODES", 200000L);
+
+    private static final PipelineNodeGraphCache INSTANCE = new PipelineNodeGraphCache();
+
+    private final Cache<String, CachedGraph> graphs = CacheBuilder.newBuilder()
+        .maximumWeight(MAX_CACHED_NODES)
+        .weigher(new Weigher<String, CachedGraph>() {
+            @Override
+            public int weigh(String key, CachedGraph value) {
+                return value.weight;
+            }
+        })
+        .build();
+
+    /** Gives each graph built its own serial, see {@link #getSerial(WorkflowRun)} */
+    private final AtomicLong serials = new AtomicLong();
+
+    /** Graph change counters of running builds, keyed by {@link WorkflowRun#getExternalizableId()} */
+    private final ConcurrentMap<String, AtomicLong> versions = new ConcurrentHashMap<>();
+
+    public static PipelineNodeGraphCache get(){
+        return INSTANCE;
+    }
+
+    /**
+     * Gives graph of given run, building it only if there is no cached graph or the cached one is out of date.
+     */
+    public @Nonnull PipelineNodeGraphVisitor getGraph(@Nonnull WorkflowRun run){
+        String key = run.getExternalizableId();
+        boolean complete = !run.isBuilding();
+        long version = complete ? 0 : track(run, key);
+        int pendingInputs = complete ? 0 : getPendingInputCount(run);
+
+        CachedGraph cached = graphs.getIfPresent(key);
+        if(cached != null && (cached.complete
+            || (!complete && cached.version == version && cached.pendingInputs == pendingInputs))){
+            return cached.graph;
+        }
+
+        PipelineNodeGraphVisitor graph = complete ? PipelineNodeGraphSnapshot.load(run) : null;
+        if(graph == null) {
+            // stages that had ended in the graph built before are taken from it
+            graph = new PipelineNodeGraphVisitor(run, cached != null ? cached.graph : null);
+            if(complete) {
+                PipelineNodeGraphSnapshot.save(run, graph);
+            }
+        }
+        if(version >= 0) {
+            graphs.put(key, new CachedGraph(graph, serials.incrementAndGet(), version, pendingInputs, complete));
+        }
+        return graph;
+    }
+
+    /**
+     * Serial of the current graph of given run, it changes only when the graph is built again, that is when the graph
+     * of a running build changed or the cached graph was evicted.
+     *
+     * @return -1 if the current graph isn't cached, and so can't be told apart from the next one
+     */
+    long getSerial(@Nonnull WorkflowRun run){
+        PipelineNodeGraphVisitor graph = getGraph(run);
+        CachedGraph cached = graphs.getIfPresent(run.getExternalizableId());
+        return cached != null && cached.graph == graph ? cached.serial : -1;
+    }
+
+    /**
+     * Gives graph nodes of given build, that is the last successful build of its job. Used to show future nodes of
+     * failed or running builds, see {@link NodeGraphBuilder#union(List, io.jenkins.blueocean.rest.hal.Link)}.
+     *
+     * Nodes come from the cached graph of the build like those of any other build, it's completed so its graph stays
+     * cached until evicted.
+     */
+    public @Nonnull List<FlowNodeWrapper> getLastSuccessfulNodes(@Nonnull WorkflowRun lastSuccessfulRun){
+        return Collections.unmodifiableList(getGraph(lastSuccessfulRun).getPipelineNodes());
+    }
+
+    /**
+     * Puts cached graph of given run again, if it's still the given one, so that the cache takes its current weight.
+     * Cache doesn't weigh an entry again on its own, steps indexed after the graph was cached would not count.
+     */
+    void reweigh(@Nonnull WorkflowRun run, @Nonnull PipelineNodeGraphVisitor graph){
+        String key = run.getExternalizableId();
+        CachedGraph cached = graphs.getIfPresent(key);
+        if(cached != null && cached.graph == graph){
+            graphs.put(key, new CachedGraph(graph, cached.serial, cached.version, cached.pendingInputs, cached.complete));
+        }
+    }
+
+    /**
+     * Version of the graph of given running build, from the count of new flow heads and its pending inputs, told without
+     * looking at the graph.
+     *
+     * @return null if the build's new heads aren't counted, as when its execution isn't there yet or is complete
+     */
+    @CheckForNull String getRunningVersion(@Nonnull WorkflowRun run){
+        FlowExecution execution = run.getExecution();
+        if(execution == null || execution.isComplete()){
+            return null;
+        }
+        long version = track(run, run.getExternalizableId());
+        return version < 0 ? null : version + "/" + getPendingInputCount(run);
+    }
+
+    /** Weight of cached graph of given run, 0 if it's not cached */
+    int getWeight(@Nonnull WorkflowRun run){
+        CachedGraph cached = graphs.getIfPresent(run.getExternalizableId());
+        return cached == null ? 0 : cached.weight;
+    }
+
+    /** Drops cached graph of given run */
+    public void invalidate(@Nonnull WorkflowRun run){
+        graphs.invalidate(run.getExternalizableId());
+    }
+
+    /**
+     * Registers {@link GraphListener} on running build's execution, if not already done.
+     *
+     * @return current graph version, -1 if the execution is not yet available and the graph must not be cached
+     */
+    private long track(WorkflowRun run, String key){
+        AtomicLong version = versions.get(key);
+        if(version != null){
+            return version.get();
+        }
+        FlowExecution execution = run.getExecution();
+        if(execution == null){
+            return -1;
+        }
+        if(execution.isComplete()){ //run is about to finish, nothing more to listen to
+            return 0;
+        }
+        AtomicLong v = new AtomicLong();
+        version = versions.putIfAbsent(key, v);
+        if(version == null){
+            version = v;
+            execution.addListener(new GraphVersionListener(version));
+        }
+        return version.get();
+    }
+
+    private static int getPendingInputCount(WorkflowRun run){
+        InputAction inputAction = run.getAction(InputAction.class);
+        return inputAction == null ? 0 : inputAction.getExecutions().size();
+    }
+
+    private static class CachedGraph {
+        private final PipelineNodeGraphVisitor graph;
+        private final long serial;
+        private final long version;
+        private final int pendingInputs;
+        private final boolean complete;
+        private final int weight;
+
+        private CachedGraph(PipelineNodeGraphVisitor graph, long serial, long version, int pendingInputs, boolean complete) {
+            this.graph = graph;
+            this.serial = serial;
+            this.version = version;
+            this.pendingInputs = pendingInputs;
+            this.complete = complete;
+            this.weight = graph.getWeight();
+        }
+    }
+
+    private static class GraphVersionListener implements GraphListener {
+        private final AtomicLong version;
+
+        private GraphVersionListener(AtomicLong version) {
+            this.version = version;
+        }
+
+        @Override
+        public void onNewHead(FlowNode node) {
+            version.incrementAndGet();
+        }
+    }
+
+    @Extension
+    public static class RunListenerImpl extends RunListener<WorkflowRun> {
+        @Override
+        public void onCompleted(WorkflowRun run, @Nonnull TaskListener listener) {
+            INSTANCE.versions.remove(run.getExternalizableId());
+        }
+
+        @Override
+        public void onFinalized(final WorkflowRun run) {
+            Timer.get().submit(new Runnable() {
+                @Override
+                public void run() {
+                    if(!PipelineNodeGraphSnapshot.getFile(run).exists()) {
+                        INSTANCE.getGraph(run);
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void onDeleted(WorkflowRun run) {
+            INSTANCE.versions.remove(run.getExternalizableId());
+            INSTANCE.invalidate(run);
+            PipelineNodeGraphVersions.get().invalidate(run);
+        }
+    }
+}
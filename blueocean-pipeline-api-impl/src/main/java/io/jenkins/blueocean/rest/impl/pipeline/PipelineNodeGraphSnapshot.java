@@ -0,0 +1,247 @@
+package io.jenkins.blueocean.rest.impl.pipeline;
+
+import io.jenkins.blueocean.rest.model.BlueRun;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.jenkinsci.plugins.workflow.pipelinegraphanalysis.TimingInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary snapshot of a completed run's node graph and step index, kept in the build directory.
+ *
+ * Restoring it gives the same graph without walking the flow graph, {@link FlowNodeWrapper}s are restored without
+ * their {@link org.jenkinsci.plugins.workflow.graph.FlowNode} which is loaded only if a response needs it, for
+ * example for actions or logs.
+ *
+ * Layout: header, string table, node records and then the lists of graph nodes, all steps and steps of each graph
+ * node as indexes in to node records.
+ */
+final class PipelineNodeGraphSnapshot {
+    static final String FILE_NAME = "blueocean-pipeline-graph.bin";
+
+    private static final int MAGIC = 0x424f4752; // BOGR
+    private static final int FORMAT_VERSION = 1;
+
+    private static final Logger logger = LoggerFactory.getLogger(PipelineNodeGraphSnapshot.class);
+
+    private PipelineNodeGraphSnapshot() {
+    }
+
+    static File getFile(@Nonnull WorkflowRun run){
+        return new File(run.getRootDir(), FILE_NAME);
+    }
+
+    /**
+     * Restores graph of given run.
+     *
+     * @return restored graph, null if there is no usable snapshot
+     */
+    static @CheckForNull PipelineNodeGraphVisitor load(@Nonnull WorkflowRun run){
+        File file = getFile(run);
+        if(!file.isFile()){
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            return read(run, in);
+        } catch (IOException | RuntimeException e) {
+            logger.warn(String.format("Ignoring unreadable pipeline graph snapshot %s: %s", file, e.getMessage()));
+            return null;
+        }
+    }
+
+    /**
+     * Writes graph of given completed run, replacing earlier snapshot if any.
+     */
+    static void save(@Nonnull WorkflowRun run, @Nonnull PipelineNodeGraphVisitor graph){
+        File file = getFile(run);
+        File tmp = null;
+        try {
+            // the run listener and a request may save it at the same time, each writes its own temporary file
+            tmp = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                write(graph, out);
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn(String.format("Failed to write pipeline graph snapshot %s: %s", file, e.getMessage()), e);
+        } finally {
+            if(tmp != null && tmp.exists() && !tmp.delete()){
+                logger.warn("Failed to delete "+tmp);
+            }
+        }
+    }
+
+    private static void write(PipelineNodeGraphVisitor graph, DataOutputStream out) throws IOException {
+        PipelineStepVisitor stepIndex = graph.getStepIndex();
+        List<FlowNodeWrapper> nodes = graph.getPipelineNodes();
+        List<FlowNodeWrapper> steps = stepIndex.getSteps();
+
+        Map<String, Integer> strings = new LinkedHashMap<>();
+        Map<String, Integer> recordIndex = new HashMap<>();
+        List<FlowNodeWrapper> records = new ArrayList<>();
+        for(FlowNodeWrapper node: nodes){
+            addRecord(node, records, recordIndex, strings);
+        }
+        for(FlowNodeWrapper step: steps){
+            addRecord(step, records, recordIndex, strings);
+        }
+        Map<String, List<FlowNodeWrapper>> nodeSteps = new LinkedHashMap<>();
+        for(FlowNodeWrapper node: nodes){
+            List<FlowNodeWrapper> s = stepIndex.getSteps(node.getId());
+            for(FlowNodeWrapper step: s){
+                addRecord(step, records, recordIndex, strings);
+            }
+            nodeSteps.put(node.getId(), s);
+        }
+
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+
+        out.writeInt(strings.size());
+        for(String s: strings.keySet()){
+            out.writeUTF(s);
+        }
+
+        out.writeInt(records.size());
+        for(FlowNodeWrapper record: records){
+            out.writeInt(strings.get(record.getId()));
+            out.writeByte(record.type.ordinal());
+            out.writeInt(strings.get(record.getDisplayName()));
+            out.writeByte(ordinal(record.getStatus().getResult()));
+            out.writeByte(ordinal(record.getStatus().getState()));
+            out.writeLong(record.getTiming().getTotalDurationMillis());
+            out.writeLong(record.getTiming().getPauseDurationMillis());
+            out.writeLong(record.getTiming().getStartTimeMillis());
+            out.writeInt(record.getEdges().size());
+            for(String edge: record.getEdges()){
+                out.writeInt(strings.get(edge));
+            }
+            out.writeInt(record.getParents().size());
+            for(FlowNodeWrapper parent: record.getParents()){
+                out.writeInt(recordIndex.get(parent.getId()));
+            }
+        }
+
+        writeRecords(nodes, recordIndex, out);
+        writeRecords(steps, recordIndex, out);
+        out.writeInt(nodeSteps.size());
+        for(Map.Entry<String, List<FlowNodeWrapper>> e: nodeSteps.entrySet()){
+            out.writeInt(strings.get(e.getKey()));
+            writeRecords(e.getValue(), recordIndex, out);
+        }
+    }
+
+    private static PipelineNodeGraphVisitor read(WorkflowRun run, DataInputStream in) throws IOException {
+        if(in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION){
+            throw new IOException("unknown snapshot format");
+        }
+
+        String[] strings = new String[in.readInt()];
+        for(int i = 0; i < strings.length; i++){
+            strings[i] = in.readUTF();
+        }
+
+        FlowNodeWrapper.NodeType[] types = FlowNodeWrapper.NodeType.values();
+        FlowNodeWrapper[] records = new FlowNodeWrapper[in.readInt()];
+        int[][] parents = new int[records.length][];
+        for(int i = 0; i < records.length; i++){
+            String id = strings[in.readInt()];
+            FlowNodeWrapper.NodeType type = types[in.readByte()];
+            String displayName = strings[in.readInt()];
+            NodeRunStatus status = new NodeRunStatus(
+                valueOf(BlueRun.BlueRunResult.values(), in.readByte()),
+                valueOf(BlueRun.BlueRunState.values(), in.readByte()));
+            TimingInfo timing = new TimingInfo(in.readLong(), in.readLong(), in.readLong());
+            records[i] = new FlowNodeWrapper(id, type, displayName, status, timing, run);
+            int edges = in.readInt();
+            for(int j = 0; j < edges; j++){
+                records[i].addEdge(strings[in.readInt()]);
+            }
+            parents[i] = new int[in.readInt()];
+            for(int j = 0; j < parents[i].length; j++){
+                parents[i][j] = in.readInt();
+            }
+        }
+        for(int i = 0; i < records.length; i++){
+            for(int parent: parents[i]){
+                records[i].addParent(records[parent]);
+            }
+        }
+
+        List<FlowNodeWrapper> nodes = readRecords(records, in);
+        List<FlowNodeWrapper> steps = readRecords(records, in);
+        Map<String, List<FlowNodeWrapper>> nodeSteps = new HashMap<>();
+        int count = in.readInt();
+        for(int i = 0; i < count; i++){
+            String id = strings[in.readInt()];
+            nodeSteps.put(id, readRecords(records, in));
+        }
+        return new PipelineNodeGraphVisitor(run, nodes, new PipelineStepVisitor(run, steps, nodeSteps));
+    }
+
+    private static void addRecord(FlowNodeWrapper node, List<FlowNodeWrapper> records, Map<String, Integer> recordIndex,
+                                  Map<String, Integer> strings){
+        if(recordIndex.containsKey(node.getId())){
+            return;
+        }
+        recordIndex.put(node.getId(), records.size());
+        records.add(node);
+        intern(node.getId(), strings);
+        intern(node.getDisplayName(), strings);
+        for(String edge: node.getEdges()){
+            intern(edge, strings);
+        }
+        for(FlowNodeWrapper parent: node.getParents()){
+            addRecord(parent, records, recordIndex, strings);
+        }
+    }
+
+    private static void intern(String s, Map<String, Integer> strings){
+        if(!strings.containsKey(s)){
+            strings.put(s, strings.size());
+        }
+    }
+
+    private static void writeRecords(List<FlowNodeWrapper> nodes, Map<String, Integer> recordIndex,
+                                     DataOutputStream out) throws IOException {
+        out.writeInt(nodes.size());
+        for(FlowNodeWrapper node: nodes){
+            out.writeInt(recordIndex.get(node.getId()));
+        }
+    }
+
+    private static List<FlowNodeWrapper> readRecords(FlowNodeWrapper[] records, DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<FlowNodeWrapper> nodes = new ArrayList<>(count);
+        for(int i = 0; i < count; i++){
+            nodes.add(records[in.readInt()]);
+        }
+        return nodes;
+    }
+
+    private static int ordinal(Enum<?> value){
+        return value == null ? -1 : value.ordinal();
+    }
+
+    private static <T> T valueOf(T[] values, int ordinal){
+        return ordinal < 0 ? null : values[ordinal];
+    }
+}
@@ -0,0 +1,222 @@
+package io.jenkins.blueocean.rest.impl.pipeline;
+
+import com.google.common.base.Supplier;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.jenkins.blueocean.rest.model.BluePipelineNode;
+import io.jenkins.blueocean.rest.model.BlueRun;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Versions of the node lists served for each run, so that a client polling a running build can ask only for the
+ * nodes that changed since its previous response, see {@link PipelineNodeContainerImpl}.
+ *
+ * Nodes are compared with the ones served before only when the graph of the run was built again, see
+ * {@link PipelineNodeGraphCache#getSerial(WorkflowRun)}, until then they can't have changed. Each time they differ,
+ * version of the run is incremented and the changed nodes are marked with it. Duration isn't compared, it grows with
+ * each request while a node runs, clients tell it from the start time. Token given to clients is the version prefixed
+ * by the time tracking of the run started, so that a token issued before the run was evicted or Jenkins restarted is
+ * recognized and answered with all nodes.
+ *
+ * Nodes are built only when there is something to send, a client polling with the current token of an unchanged
+ * graph gets an empty delta without them.
+ */
+final class PipelineNodeGraphVersions {
+    /** Maximum number of runs whose node versions are tracked */
+    static final int MAX_TRACKED_RUNS = Integer.getInteger("BLUEOCEAN_NODE_GRAPH_MAX_TRACKED_RUNS", 1000);
+
+    private static final PipelineNodeGraphVersions INSTANCE = new PipelineNodeGraphVersions();
+
+    private final Cache<String, RunVersions> runs = CacheBuilder.newBuilder()
+        .maximumSize(MAX_TRACKED_RUNS)
+        .expireAfterAccess(1, TimeUnit.HOURS)
+        .build();
+
+    static PipelineNodeGraphVersions get(){
+        return INSTANCE;
+    }
+
+    /**
+     * Records given nodes as the current nodes of given run.
+     *
+     * @param graph identifies the graph the nodes are built from, nodes are compared again only when it changes, null
+     *              if it can't be told and they must be compared each time
+     * @param nodes current nodes, only asked for when they're compared or sent
+     * @param since token of an earlier response, null if all nodes are wanted
+     * @return nodes changed since given token, or all nodes if the token is missing or can't be answered with changes
+     */
+    @Nonnull Changes update(@Nonnull WorkflowRun run, @CheckForNull String graph,
+                            @Nonnull Supplier<List<BluePipelineNode>> nodes, @CheckForNull String since){
+        return getVersions(run).update(graph, nodes, since);
+    }
+
+    private RunVersions getVersions(WorkflowRun run){
+        String key = run.getExternalizableId();
+        synchronized (runs) {
+            RunVersions versions = runs.getIfPresent(key);
+            if(versions == null){
+                versions = new RunVersions();
+                runs.put(key, versions);
+            }
+            return versions;
+        }
+    }
+
+    /** Drops versions of given run */
+    void invalidate(@Nonnull WorkflowRun run){
+        runs.invalidate(run.getExternalizableId());
+    }
+
+    /** Nodes to send in response to a nodes list request */
+    static final class Changes {
+        /** Changed nodes if {@link #delta}, all nodes otherwise */
+        final List<BluePipelineNode> nodes;
+        /** Whether {@link #nodes} has only nodes changed since the token asked for */
+        final boolean delta;
+        /** Token of this response */
+        final String token;
+
+        private Changes(List<BluePipelineNode> nodes, boolean delta, String token) {
+            this.nodes = nodes;
+            this.delta = delta;
+            this.token = token;
+        }
+    }
+
+    private static final class RunVersions {
+        private final long epoch = System.currentTimeMillis();
+        private final Map<String, NodeState> states = new HashMap<>();
+        private long version;
+        /** Last version in which a node went away, changes alone can't tell clients about it */
+        private long lastRemoval;
+        /** Graph the nodes were last compared for */
+        private String graph;
+
+        private synchronized Changes update(String graph, Supplier<List<BluePipelineNode>> nodes, String since){
+            String token = getToken(graph, nodes);
+            long sinceVersion = parse(since);
+            if(sinceVersion < 0 || sinceVersion < lastRemoval){
+                return new Changes(nodes.get(), false, token);
+            }
+            if(sinceVersion == version){
+                return new Changes(Collections.<BluePipelineNode>emptyList(), true, token);
+            }
+            List<BluePipelineNode> changedNodes = new ArrayList<>();
+            for(BluePipelineNode node: nodes.get()){
+                NodeState state = states.get(node.getId());
+                if(state == null || state.version > sinceVersion){
+                    changedNodes.add(node);
+                }
+            }
+            return new Changes(changedNodes, true, token);
+        }
+
+        private synchronized String getToken(String graph, Supplier<List<BluePipelineNode>> nodes){
+            if(graph == null || !graph.equals(this.graph)){
+                compare(nodes.get());
+                this.graph = graph;
+            }
+            return epoch + "." + version;
+        }
+
+        /** Marks nodes that differ from the ones served before with a new version */
+        private void compare(List<BluePipelineNode> nodes){
+            List<NodeState> current = new ArrayList<>(nodes.size());
+            boolean changed = nodes.size() != states.size();
+            for(BluePipelineNode node: nodes){
+                NodeState state = new NodeState(node);
+                NodeState previous = states.get(state.id);
+                if(previous != null && previous.sameAs(state)){
+                    state.version = previous.version;
+                }else{
+                    state.version = -1;
+                    changed = true;
+                }
+                current.add(state);
+            }
+            if(!changed){
+                return;
+            }
+
+            version++;
+            Map<String, NodeState> next = new HashMap<>();
+            for(NodeState state: current){
+                if(state.version < 0){
+                    state.version = version;
+                }
+                next.put(state.id, state);
+            }
+            for(String id: states.keySet()){
+                if(!next.containsKey(id)){
+                    lastRemoval = version;
+                    break;
+                }
+            }
+            states.clear();
+            states.putAll(next);
+        }
+
+        /** @return version of given token, -1 if it's not a token of these versions */
+        private long parse(String token){
+            if(token == null){
+                return -1;
+            }
+            int i = token.indexOf('.');
+            if(i < 0 || !token.substring(0, i).equals(Long.toString(epoch))){
+                return -1;
+            }
+            try {
+                long v = Long.parseLong(token.substring(i + 1));
+                return v <= version ? v : -1;
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+    }
+
+    /** Values of a node as exported to clients, edges and displayName included, duration left out */
+    private static final class NodeState {
+        private final String id;
+        private final String displayName;
+        private final BlueRun.BlueRunResult result;
+        private final BlueRun.BlueRunState state;
+        private final Date startTime;
+        private final List<String> edges;
+        private long version;
+
+        private NodeState(BluePipelineNode node) {
+            this.id = node.getId();
+            this.displayName = node.getDisplayName();
+            this.result = node.getResult();
+            this.state = node.getStateObj();
+            this.startTime = node.getStartTime();
+            this.edges = new ArrayList<>(node.getEdges().size());
+            for(BluePipelineNode.Edge edge: node.getEdges()){
+                this.edges.add(edge.getId());
+            }
+        }
+
+        private boolean sameAs(NodeState that){
+            return id.equals(that.id)
+                && equal(displayName, that.displayName)
+                && result == that.result
+                && state == that.state
+                && equal(startTime, that.startTime)
+                && edges.equals(that.edges);
+        }
+
+        private static boolean equal(Object a, Object b){
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+}
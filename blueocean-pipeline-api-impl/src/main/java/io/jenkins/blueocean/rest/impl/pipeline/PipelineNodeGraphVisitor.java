@@ -1,17 +1,18 @@
 package io.jenkins.blueocean.rest.impl.pipeline;
 
-import com.google.common.base.Predicate;
+import com.google.common.base.Function;
+import com.google.common.collect.Iterators;
 import io.jenkins.blueocean.rest.hal.Link;
 import io.jenkins.blueocean.rest.model.BluePipelineNode;
 import io.jenkins.blueocean.rest.model.BluePipelineStep;
 import io.jenkins.blueocean.rest.model.BlueRun;
+import io.jenkins.blueocean.rest.pageable.Pageables;
 import org.jenkinsci.plugins.workflow.actions.NotExecutedNodeAction;
 import org.jenkinsci.plugins.workflow.actions.TimingAction;
 import org.jenkinsci.plugins.workflow.cps.nodes.StepAtomNode;
 import org.jenkinsci.plugins.workflow.cps.nodes.StepEndNode;
 import org.jenkinsci.plugins.workflow.graph.BlockEndNode;
 import org.jenkinsci.plugins.workflow.graph.FlowNode;
-import org.jenkinsci.plugins.workflow.graphanalysis.DepthFirstScanner;
 import org.jenkinsci.plugins.workflow.graphanalysis.ForkScanner;
 import org.jenkinsci.plugins.workflow.graphanalysis.MemoryFlowChunk;
 import org.jenkinsci.plugins.workflow.graphanalysis.StandardChunkVisitor;
@@ -33,10 +34,13 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Stack;
 
 /**
@@ -61,6 +65,13 @@ public class PipelineNodeGraphVisitor extends StandardChunkVisitor implements No
 
     private static final boolean isNodeVisitorDumpEnabled = Boolean.getBoolean("NODE-DUMP-ENABLED");
 
+    private static final Comparator<FlowNodeWrapper> BRANCH_ORDER = new Comparator<FlowNodeWrapper>() {
+        @Override
+        public int compare(FlowNodeWrapper o1, FlowNodeWrapper o2) {
+            return o1.getDisplayName().compareTo(o2.getDisplayName());
+        }
+    };
+
     private final Stack<FlowNode> nestedStages = new Stack<>();
     private final Stack<FlowNode> nestedbranches = new Stack<>();
 
@@ -70,12 +81,61 @@ public class PipelineNodeGraphVisitor extends StandardChunkVisitor implements No
 
     private final InputAction inputAction;
 
+    private PipelineStepVisitor stepIndex;
+
+    /** Classifies nodes of this run for graph and step index walks, dropped once both are done */
+    private FlowNodeClassifier classifier = new FlowNodeClassifier();
+
+    /**
+     * Ids of stages and parallel branches that had ended, and were followed by another node, when this graph was
+     * built. Their status and timing can't change any more, see {@link #PipelineNodeGraphVisitor(WorkflowRun, PipelineNodeGraphVisitor)}.
+     */
+    private final Set<String> settled = new HashSet<>();
+
+    /** Earlier graph of the same run, only while this one is built */
+    private PipelineNodeGraphVisitor previous;
+
     public PipelineNodeGraphVisitor(WorkflowRun run) {
+        this(run, null);
+    }
+
+    /**
+     * Graph of given run built again after its flow graph changed. Stages and branches that had already ended in the
+     * previous graph take their status and timing from it instead of computing them again, so a new head of a running
+     * build costs the walk of the flow graph but not the status of every stage before it.
+     *
+     * @param previous graph of the same run built earlier, null if there is none
+     */
+    PipelineNodeGraphVisitor(WorkflowRun run, @Nullable PipelineNodeGraphVisitor previous) {
         this.run = run;
         this.inputAction = run.getAction(InputAction.class);
+        this.previous = previous;
         if(run.getExecution()!=null) {
             ForkScanner.visitSimpleChunks(run.getExecution().getCurrentHeads(), this, new StageChunkFinder());
         }
+        this.previous = null;
+        // graph is cached, keep only ids of the flow nodes and int indexes of edges and parents
+        for(FlowNodeWrapper node: nodes){
+            node.releaseNode();
+        }
+        NodeAdjacency.compact(new ArrayList<>(nodes));
+    }
+
+    /**
+     * Graph of given nodes and steps, computed earlier and restored without walking the flow graph.
+     *
+     * @see PipelineNodeGraphSnapshot
+     */
+    PipelineNodeGraphVisitor(WorkflowRun run, List<FlowNodeWrapper> nodes, PipelineStepVisitor stepIndex) {
+        this.run = run;
+        this.inputAction = run.getAction(InputAction.class);
+        for(FlowNodeWrapper node: nodes){
+            this.nodes.add(node);
+            this.nodeMap.put(node.getId(), node);
+        }
+        this.stepIndex = stepIndex;
+        this.classifier = null;
+        NodeAdjacency.compact(nodes);
     }
 
     @Override
@@ -85,7 +145,7 @@ public class PipelineNodeGraphVisitor extends StandardChunkVisitor implements No
             dump(String.format("chunkStart=> id: %s, name: %s, function: %s", startNode.getId(),
                     startNode.getDisplayName(), startNode.getDisplayFunctionName()));
 
-        if(PipelineNodeUtil.isSyntheticStage(startNode)){
+        if(classifier.isSyntheticStage(startNode)){
             return;
         }
         if (NotExecutedNodeAction.isExecuted(startNode)) {
@@ -108,8 +168,8 @@ public class PipelineNodeGraphVisitor extends StandardChunkVisitor implements No
 
         //if block stage node push it to stack as it may have nested stages
         if(endNode instanceof StepEndNode
-                && !PipelineNodeUtil.isSyntheticStage(((StepEndNode) endNode).getStartNode()) //skip synthetic stages
-                && PipelineNodeUtil.isStage(((StepEndNode) endNode).getStartNode())) {
+                && !classifier.isSyntheticStage(((StepEndNode) endNode).getStartNode()) //skip synthetic stages
+                && classifier.isStage(((StepEndNode) endNode).getStartNode())) {
             nestedStages.push(endNode);
         }
         firstExecuted = null;
@@ -131,6 +191,14 @@ public class PipelineNodeGraphVisitor extends StandardChunkVisitor implements No
 
         assert nestedbranches.size() == parallelBranchEndNodes.size();
 
+        // new branches in reverse order of visit followed by branches seen earlier, sorted by name below
+        int newBranches = Math.min(nestedbranches.size(), parallelBranchEndNodes.size());
+        FlowNodeWrapper[] sortedBranches = new FlowNodeWrapper[newBranches + parallelBranches.size()];
+        int count = newBranches;
+        for(FlowNodeWrapper p: parallelBranches){
+            sortedBranches[count++] = p;
+        }
+
         while(!nestedbranches.empty() && !parallelBranchEndNodes.empty()){
             FlowNode branchStartNode = nestedbranches.pop();
 
@@ -139,7 +207,11 @@ public class PipelineNodeGraphVisitor extends StandardChunkVisitor implements No
             TimingInfo times;
             NodeRunStatus status;
 
-            if(endNode != null) {
+            FlowNodeWrapper settledBranch = getSettled(branchStartNode.getId());
+            if(settledBranch != null) {
+                times = settledBranch.getTiming();
+                status = settledBranch.getStatus();
+            }else if(endNode != null) {
                 times = StatusAndTiming.computeChunkTiming(run, chunk.getPauseTimeMillis(), branchStartNode, endNode,
                         chunk.getNodeAfter());
                 if(endNode instanceof StepAtomNode){
@@ -160,27 +232,25 @@ public class PipelineNodeGraphVisitor extends StandardChunkVisitor implements No
                 status = new NodeRunStatus(BlueRun.BlueRunResult.UNKNOWN, BlueRun.BlueRunState.RUNNING);
             }
 
-            FlowNodeWrapper branch = new FlowNodeWrapper(branchStartNode, status, times, run);
+            if(endNode instanceof BlockEndNode && parallelEnd != null && chunk.getNodeAfter() != null){
+                settled.add(branchStartNode.getId());
+            }
+            FlowNodeWrapper branch = new FlowNodeWrapper(branchStartNode, status, times, null, run, classifier);
 
             if(nextStage!=null) {
                 branch.addEdge(nextStage.getId());
             }
-            parallelBranches.push(branch);
+            sortedBranches[--newBranches] = branch;
         }
 
-        FlowNodeWrapper[] sortedBranches = parallelBranches.toArray(new FlowNodeWrapper[parallelBranches.size()]);
-        Arrays.sort(sortedBranches, new Comparator<FlowNodeWrapper>() {
-            @Override
-            public int compare(FlowNodeWrapper o1, FlowNodeWrapper o2) {
-                return o1.getDisplayName().compareTo(o2.getDisplayName());
-            }
-        });
+        Arrays.sort(sortedBranches, BRANCH_ORDER);
 
         parallelBranches.clear();
         for(int i=0; i< sortedBranches.length; i++){
             parallelBranches.push(sortedBranches[i]);
         }
-        for(FlowNodeWrapper p:parallelBranches){
+        for(int i=sortedBranches.length-1; i >= 0; i--){
+            FlowNodeWrapper p = sortedBranches[i];
             nodes.push(p);
             nodeMap.put(p.getId(), p);
         }
@@ -233,7 +303,7 @@ public class PipelineNodeGraphVisitor extends StandardChunkVisitor implements No
             dump(String.format("handleChunkDone=> id: %s, name: %s, function: %s", chunk.getFirstNode().getId(),
                     chunk.getFirstNode().getDisplayName(), chunk.getFirstNode().getDisplayFunctionName()));
 
-        if(PipelineNodeUtil.isSyntheticStage(chunk.getFirstNode())){
+        if(classifier.isSyntheticStage(chunk.getFirstNode())){
             return;
         }
 
@@ -245,35 +315,42 @@ public class PipelineNodeGraphVisitor extends StandardChunkVisitor implements No
         }
 
         TimingInfo times = null;
+        NodeRunStatus status;
+        boolean skippedStage = classifier.isSkippedStage(chunk.getFirstNode());
+        FlowNodeWrapper settledStage = getSettled(chunk.getFirstNode().getId());
+        if(settledStage != null){
+            times = settledStage.getTiming();
+            status = settledStage.getStatus();
+        }else {
+            //TODO: remove chunk.getLastNode() != null check based on how JENKINS-40200 gets resolved
+            if (firstExecuted != null && chunk.getLastNode() != null) {
+                times = StatusAndTiming.computeChunkTiming(run, chunk.getPauseTimeMillis(), firstExecuted, chunk.getLastNode(), chunk.getNodeAfter());
+            }
 
-        //TODO: remove chunk.getLastNode() != null check based on how JENKINS-40200 gets resolved
-        if (firstExecuted != null && chunk.getLastNode() != null) {
-            times = StatusAndTiming.computeChunkTiming(run, chunk.getPauseTimeMillis(), firstExecuted, chunk.getLastNode(), chunk.getNodeAfter());
-        }
-
-        if(times == null){
-            times = new TimingInfo();
-        }
+            if (times == null) {
+                times = new TimingInfo();
+            }
 
-        NodeRunStatus status;
-        boolean skippedStage = PipelineNodeUtil.isSkippedStage(chunk.getFirstNode());
-        if(skippedStage){
-            status = new NodeRunStatus(BlueRun.BlueRunResult.NOT_BUILT, BlueRun.BlueRunState.SKIPPED);
-        }else if (firstExecuted == null) {
-            status = new NodeRunStatus(GenericStatus.NOT_EXECUTED);
-        }else if(chunk.getLastNode() != null){
-            status = new NodeRunStatus(StatusAndTiming
-                    .computeChunkStatus(run, chunk.getNodeBefore(),
-                            firstExecuted, chunk.getLastNode(), chunk.getNodeAfter()));
-        }else{
-            status = new NodeRunStatus(firstExecuted);
+            if (skippedStage) {
+                status = new NodeRunStatus(BlueRun.BlueRunResult.NOT_BUILT, BlueRun.BlueRunState.SKIPPED);
+            } else if (firstExecuted == null) {
+                status = new NodeRunStatus(GenericStatus.NOT_EXECUTED);
+            } else if (chunk.getLastNode() != null) {
+                status = new NodeRunStatus(StatusAndTiming
+                        .computeChunkStatus(run, chunk.getNodeBefore(),
+                                firstExecuted, chunk.getLastNode(), chunk.getNodeAfter()));
+            } else {
+                status = new NodeRunStatus(firstExecuted);
+            }
         }
 
         if (!pendingInputSteps.isEmpty()) {
             status = new NodeRunStatus(BlueRun.BlueRunResult.UNKNOWN, BlueRun.BlueRunState.PAUSED);
+        }else if(chunk.getLastNode() instanceof BlockEndNode && chunk.getNodeAfter() != null){
+            settled.add(chunk.getFirstNode().getId());
         }
         FlowNodeWrapper stage = new FlowNodeWrapper(chunk.getFirstNode(),
-                status, times, run);
+                status, times, null, run, classifier);
 
         nodes.push(stage);
         nodeMap.put(stage.getId(), stage);
@@ -320,6 +397,11 @@ public class PipelineNodeGraphVisitor extends StandardChunkVisitor implements No
         }
     }
 
+    /** Node of the previous graph whose status and timing can't have changed since, null if there is none */
+    private @CheckForNull FlowNodeWrapper getSettled(String id){
+        return previous != null && previous.settled.contains(id) ? previous.nodeMap.get(id) : null;
+    }
+
     private void dump(String str){
         System.out.println(str);
     }
@@ -340,27 +422,12 @@ public class PipelineNodeGraphVisitor extends StandardChunkVisitor implements No
 
     @Override
     public List<BluePipelineStep> getPipelineNodeSteps(final String nodeId, Link parent) {
-        DepthFirstScanner depthFirstScanner = new DepthFirstScanner();
         if(run.getExecution() == null){
             logger.debug(String.format("Pipeline %s, runid %s  has null execution", run.getParent().getName(), run.getId()));
             return Collections.emptyList();
         }
-        //If blocked scope, get the end node
-        FlowNode n = depthFirstScanner.findFirstMatch(run.getExecution().getCurrentHeads(), new Predicate<FlowNode>() {
-            @Override
-            public boolean apply(@Nullable FlowNode input) {
-                return (input!= null && input.getId().equals(nodeId) &&
-                        (PipelineNodeUtil.isStage(input) || PipelineNodeUtil.isParallelBranch(input)));
-            }
-        });
-
-        if(n == null){ //if no node found or the node is not stage or parallel we return empty steps
-            return Collections.emptyList();
-        }
-        PipelineStepVisitor visitor = new PipelineStepVisitor(run, n);
-        ForkScanner.visitSimpleChunks(run.getExecution().getCurrentHeads(), visitor, new StageChunkFinder());
         List<BluePipelineStep> steps = new ArrayList<>();
-        for(FlowNodeWrapper node: visitor.getSteps()){
+        for(FlowNodeWrapper node: getStepIndex().getSteps(nodeId)){
             steps.add(new PipelineStepImpl(node, parent));
         }
         return steps;
@@ -371,31 +438,83 @@ public class PipelineNodeGraphVisitor extends StandardChunkVisitor implements No
         if(run.getExecution() == null){
             return Collections.emptyList();
         }
-        PipelineStepVisitor visitor = new PipelineStepVisitor(run, null);
-        ForkScanner.visitSimpleChunks(run.getExecution().getCurrentHeads(), visitor, new StageChunkFinder());
         List<BluePipelineStep> steps = new ArrayList<>();
-        for(FlowNodeWrapper node: visitor.getSteps()){
+        for(FlowNodeWrapper node: getStepIndex().getSteps()){
             steps.add(new PipelineStepImpl(node, parent));
         }
         return steps;
     }
 
+    @Override
+    public Iterator<BluePipelineStep> getPipelineNodeSteps(@Nullable String nodeId, final Link parent, int start, int limit) {
+        if(run.getExecution() == null){
+            return Collections.emptyIterator();
+        }
+        Iterator<FlowNodeWrapper> page = Pageables.slice(getStepIndex().stepsOf(nodeId).iterator(), start, limit);
+        return Iterators.transform(page, new Function<FlowNodeWrapper, BluePipelineStep>() {
+            @Override
+            public BluePipelineStep apply(FlowNodeWrapper node) {
+                return new PipelineStepImpl(node, parent);
+            }
+        });
+    }
+
+    @Override
+    public List<String> getPipelineNodeStepIds(@Nullable String nodeId) {
+        if(run.getExecution() == null){
+            return Collections.emptyList();
+        }
+        List<String> ids = new ArrayList<>();
+        for(FlowNodeWrapper node: getStepIndex().stepsOf(nodeId)){
+            ids.add(node.getId());
+        }
+        return ids;
+    }
+
     @Override
     public BluePipelineStep getPipelineNodeStep(String id, Link parent) {
         if(run.getExecution() == null){
             return null;
         }
-        PipelineStepVisitor visitor = new PipelineStepVisitor(run, null);
-        ForkScanner.visitSimpleChunks(run.getExecution().getCurrentHeads(), visitor, new StageChunkFinder());
-        FlowNodeWrapper node = visitor.getStep(id);
+        FlowNodeWrapper node = getStepIndex().getStep(id);
         if( node == null){
             return null;
         }
         return new PipelineStepImpl(node, parent);
     }
 
+    /**
+     * Steps of all stages and branches of this run, indexed in a single walk on first use and shared by all step
+     * lookups on this graph.
+     */
+    PipelineStepVisitor getStepIndex(){
+        PipelineStepVisitor index;
+        synchronized (this) {
+            if(stepIndex != null){
+                return stepIndex;
+            }
+            index = new PipelineStepVisitor(run, classifier);
+            if(run.getExecution() != null) {
+                ForkScanner.visitSimpleChunks(run.getExecution().getCurrentHeads(), index, new StageChunkFinder());
+            }
+            index.releaseNodes();
+            stepIndex = index;
+            classifier = null;
+        }
+        // steps now count towards this graph's share of the cache
+        PipelineNodeGraphCache.get().reweigh(run, this);
+        return index;
+    }
+
+    /** Number of stage, parallel and step nodes held by this graph, steps count once they are indexed */
+    synchronized int getWeight(){
+        return Math.max(1, nodes.size() + (stepIndex == null ? 0 : stepIndex.size()));
+    }
+
     @Override
     public List<BluePipelineNode> union(List<FlowNodeWrapper> that, Link parent) {
+        // this graph is shared through PipelineNodeGraphCache, edges to future nodes are added to copies of its nodes
+        Map<String, FlowNodeWrapper> stitchedNodes = new HashMap<>();
         List<FlowNodeWrapper> currentNodes = new ArrayList<>(nodes);
         int currentNodeSize = nodes.size();
         int futureNodeSize = that.size();
@@ -407,33 +526,45 @@ public class PipelineNodeGraphVisitor extends StandardChunkVisitor implements No
                 if(currentNodeSize>0 && i == currentNodeSize){
                     FlowNodeWrapper latestNode = currentNodes.get(i-1);
                     if(latestNode.type == FlowNodeWrapper.NodeType.STAGE){
-                        latestNode.addEdge(futureNode.getId());
+                        stitch(stitchedNodes, latestNode).addEdge(futureNode.getId());
                     }else if(latestNode.type == FlowNodeWrapper.NodeType.PARALLEL){
                         //get stage of this parallel
                         FlowNodeWrapper stage = latestNode.getFirstParent();
                         if(stage != null){
                             //Add future node as edge to all edges of last stage
-                            for(String id:stage.edges){
+                            for(String id:stage.getEdges()){
                                 FlowNodeWrapper node = nodeMap.get(id);
                                 if(node != null) {
-                                    node.addEdge(futureNode.getId());
+                                    stitch(stitchedNodes, node).addEdge(futureNode.getId());
                                 }
                             }
                         }
                     }
                 }
-                FlowNodeWrapper n = new FlowNodeWrapper(futureNode.getNode(),
+                FlowNodeWrapper n = new FlowNodeWrapper(futureNode,
                         new NodeRunStatus(null,null),
-                        new TimingInfo(), run);
-                n.addEdges(futureNode.edges);
+                        new TimingInfo(), null, run);
+                n.addEdges(futureNode.getEdges());
                 n.addParents(futureNode.getParents());
                 currentNodes.add(n);
             }
         }
         List<BluePipelineNode> newNodes = new ArrayList<>();
         for(FlowNodeWrapper n: currentNodes){
-            newNodes.add(new PipelineNodeImpl(n,parent,run));
+            FlowNodeWrapper stitched = stitchedNodes.get(n.getId());
+            newNodes.add(new PipelineNodeImpl(stitched != null ? stitched : n,parent,run));
         }
         return newNodes;
     }
+
+    private FlowNodeWrapper stitch(Map<String, FlowNodeWrapper> stitchedNodes, FlowNodeWrapper node){
+        FlowNodeWrapper copy = stitchedNodes.get(node.getId());
+        if(copy == null){
+            copy = new FlowNodeWrapper(node, node.getStatus(), node.getTiming(), node.getInputStep(), run);
+            copy.addEdges(node.getEdges());
+            copy.addParents(node.getParents());
+            stitchedNodes.put(node.getId(), copy);
+        }
+        return copy;
+    }
 }
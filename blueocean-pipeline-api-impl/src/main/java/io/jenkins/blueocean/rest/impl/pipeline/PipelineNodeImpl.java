@@ -34,7 +34,7 @@ public class PipelineNodeImpl extends BluePipelineNode {
     public PipelineNodeImpl(FlowNodeWrapper node, Link parentLink, WorkflowRun run) {
         this.node = node;
         this.run = run;
-        this.edges = buildEdges(node.edges);
+        this.edges = buildEdges(node.getEdges());
         this.status = node.getStatus();
         this.durationInMillis = node.getTiming().getTotalDurationMillis();
         this.self = parentLink.rel(node.getId());
@@ -47,7 +47,7 @@ public class PipelineNodeImpl extends BluePipelineNode {
 
     @Override
     public String getDisplayName() {
-        return PipelineNodeUtil.getDisplayName(node.getNode());
+        return node.getDisplayName();
     }
 
     @Override
@@ -80,13 +80,14 @@ public class PipelineNodeImpl extends BluePipelineNode {
     }
 
     /**
-     * No logs for Node as Node by itself doesn't have any log to repot, its steps inside it that has logs
+     * Node by itself doesn't have any log to report, gives logs of the steps inside it, and inside its parallel
+     * branches, in one response.
      *
      * @see BluePipelineStep#getLog()
      */
     @Override
     public Object getLog() {
-        return null;
+        return new MergedLogResource(run, node.getId());
     }
 
     @Override
@@ -1,8 +1,11 @@
 package io.jenkins.blueocean.rest.impl.pipeline;
 
 import com.google.common.base.Predicate;
+import hudson.Util;
+import hudson.console.AnnotatedLargeText;
 import hudson.model.Action;
 import io.jenkins.blueocean.rest.model.BlueRun;
+import jenkins.model.Jenkins;
 import org.jenkinsci.plugins.pipeline.StageStatus;
 import org.jenkinsci.plugins.pipeline.SyntheticStage;
 import org.jenkinsci.plugins.workflow.actions.ErrorAction;
@@ -23,6 +26,7 @@ import org.jenkinsci.plugins.workflow.support.steps.input.InputAction;
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.io.IOException;
 import java.util.List;
 
 /**
@@ -70,6 +74,64 @@ public class PipelineNodeUtil {
     }
 
 
+    /**
+     * Strong entity tag of content that depends only on given run, once it's complete, and given values.
+     *
+     * Tag changes with Jenkins restart too, so that content rendered by an upgraded plugin is not mistaken for the
+     * one rendered before.
+     *
+     * @return quoted entity tag, null if the run is still building
+     */
+    @CheckForNull
+    public static String getETag(@Nonnull WorkflowRun run, Object... values){
+        if(run.isBuilding()){
+            return null;
+        }
+        StringBuilder s = new StringBuilder(Jenkins.SESSION_HASH)
+            .append(':').append(run.getExternalizableId())
+            .append(':').append(run.getTimeInMillis())
+            .append(':').append(run.getDuration());
+        for(Object value: values){
+            s.append(':').append(value);
+        }
+        return '"' + Util.getDigestOf(s.toString()) + '"';
+    }
+
+    /**
+     * Entity tag of content of given running build that depends only on given graph version, see
+     * {@link PipelineNodeGraphCache#getRunningVersion(WorkflowRun)}, and given values.
+     *
+     * @return quoted entity tag, null if the graph version isn't known
+     */
+    @CheckForNull
+    public static String getRunningETag(@Nonnull WorkflowRun run, @CheckForNull String graphVersion, Object... values){
+        if(graphVersion == null){
+            return null;
+        }
+        StringBuilder s = new StringBuilder(Jenkins.SESSION_HASH)
+            .append(':').append(run.getExternalizableId())
+            .append(':').append(run.getTimeInMillis())
+            .append(":running:").append(graphVersion);
+        for(Object value: values){
+            s.append(':').append(value);
+        }
+        return '"' + Util.getDigestOf(s.toString()) + '"';
+    }
+
+    /**
+     * Log of given step, its flow node is looked up by id in the run's execution.
+     *
+     * @return null if there is no such step or it has no log
+     * @throws IOException if the step's flow node couldn't be loaded
+     */
+    @CheckForNull
+    public static AnnotatedLargeText<? extends FlowNode> getLogText(@Nonnull WorkflowRun run, @Nonnull String stepId) throws IOException {
+        FlowExecution execution = run.getExecution();
+        FlowNode node = execution == null ? null : execution.getNode(stepId);
+        LogAction log = node == null ? null : node.getAction(LogAction.class);
+        return log == null ? null : log.getLogText();
+    }
+
     @Nonnull
     public static String getDisplayName(@Nonnull FlowNode node) {
         return node.getAction(ThreadNameAction.class) != null
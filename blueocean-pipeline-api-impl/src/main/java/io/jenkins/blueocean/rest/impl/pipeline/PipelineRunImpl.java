@@ -1,5 +1,6 @@
 package io.jenkins.blueocean.rest.impl.pipeline;
 
+import com.google.common.base.Supplier;
 import hudson.Extension;
 import hudson.model.Queue;
 import hudson.model.Run;
@@ -16,10 +17,9 @@ import io.jenkins.blueocean.rest.model.BluePipelineStepContainer;
 import io.jenkins.blueocean.rest.model.BlueQueueItem;
 import io.jenkins.blueocean.rest.model.BlueRun;
 import io.jenkins.blueocean.rest.model.Container;
-import io.jenkins.blueocean.rest.model.Containers;
 import io.jenkins.blueocean.service.embedded.rest.AbstractRunImpl;
 import io.jenkins.blueocean.service.embedded.rest.BlueRunFactory;
-import io.jenkins.blueocean.service.embedded.rest.ChangeSetResource;
+import io.jenkins.blueocean.service.embedded.rest.ChangeSetContainerImpl;
 import io.jenkins.blueocean.service.embedded.rest.QueueContainerImpl;
 import io.jenkins.blueocean.service.embedded.rest.StoppableRun;
 import org.jenkinsci.plugins.workflow.cps.replay.ReplayAction;
@@ -28,8 +28,7 @@ import org.jenkinsci.plugins.workflow.support.steps.input.InputAction;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.export.Exported;
 
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.List;
 
 import static io.jenkins.blueocean.rest.model.KnownCapabilities.JENKINS_WORKFLOW_RUN;
 
@@ -46,17 +45,12 @@ public class PipelineRunImpl extends AbstractRunImpl<WorkflowRun> {
 
     @Override
     public Container<BlueChangeSetEntry> getChangeSet() {
-        Map<String, BlueChangeSetEntry> m = new LinkedHashMap<>();
-        int cnt = 0;
-        for (ChangeLogSet<? extends Entry> cs : run.getChangeSets()) {
-            for (ChangeLogSet.Entry e : cs) {
-                cnt++;
-                String id = e.getCommitId();
-                if (id == null) id = String.valueOf(cnt);
-                m.put(id, new ChangeSetResource(e, this));
+        return new ChangeSetContainerImpl(run, this, new Supplier<List<ChangeLogSet<? extends Entry>>>() {
+            @Override
+            public List<ChangeLogSet<? extends Entry>> get() {
+                return run.getChangeSets();
             }
-        }
-        return Containers.fromResourceMap(getLink(),m);
+        });
     }
 
     @Override
@@ -99,6 +93,11 @@ public class PipelineRunImpl extends AbstractRunImpl<WorkflowRun> {
         return new PipelineStepContainerImpl(run, getLink());
     }
 
+    /** Search of the logs of the steps of this run, see {@link LogSearchResource} */
+    public LogSearchResource getLogsearch() {
+        return new LogSearchResource(run);
+    }
+
     @Override
     public BlueRun stop(@QueryParameter("blocking") Boolean blocking, @QueryParameter("timeOutInSecs") Integer timeOutInSecs){
         return stop(blocking, timeOutInSecs, new StoppableRun() {
@@ -3,30 +3,40 @@ package io.jenkins.blueocean.rest.impl.pipeline;
 import io.jenkins.blueocean.rest.hal.Link;
 import io.jenkins.blueocean.rest.model.BluePipelineStep;
 import io.jenkins.blueocean.rest.model.BluePipelineStepContainer;
+import io.jenkins.blueocean.rest.pageable.ETagged;
 import org.jenkinsci.plugins.workflow.job.WorkflowRun;
 
+import javax.annotation.Nullable;
 import java.util.Iterator;
 
 /**
+ * Steps of a pipeline run or of one of its stages or parallel branches.
+ *
+ * Steps of a completed run are listed with a strong ETag, graph is built only when it's not matched by the request.
+ *
  * @author Vivek Pandey
  */
-public class PipelineStepContainerImpl extends BluePipelineStepContainer {
-    private final FlowNodeWrapper node;
+public class PipelineStepContainerImpl extends BluePipelineStepContainer implements ETagged {
+    private final String nodeId;
     private final Link self;
     private final WorkflowRun run;
 
 
     public PipelineStepContainerImpl(FlowNodeWrapper node, Link parentLink, WorkflowRun run) {
+        this(node.getId(), parentLink, run);
+    }
+
+    /**
+     * @param nodeId id of the stage or parallel branch whose steps are listed, null for all steps of the run
+     */
+    public PipelineStepContainerImpl(@Nullable String nodeId, Link parentLink, WorkflowRun run) {
         this.self = parentLink.rel("steps");
-        this.node = node;
+        this.nodeId = nodeId;
         this.run = run;
-
     }
 
     public PipelineStepContainerImpl(WorkflowRun run, Link parentLink) {
-        this.self = parentLink.rel("steps");
-        this.node = null;
-        this.run = run;
+        this((String) null, parentLink, run);
     }
 
     @Override
@@ -38,9 +48,20 @@ public class PipelineStepContainerImpl extends BluePipelineStepContainer {
     @Override
     public Iterator<BluePipelineStep> iterator() {
         NodeGraphBuilder builder = NodeGraphBuilder.NodeGraphBuilderFactory.getInstance(run);
-        return (node == null)
+        return (nodeId == null)
             ? builder.getPipelineNodeSteps(getLink()).iterator()
-            : builder.getPipelineNodeSteps(node.getId(), getLink()).iterator();
+            : builder.getPipelineNodeSteps(nodeId, getLink()).iterator();
+    }
+
+    @Override
+    public Iterator<BluePipelineStep> iterator(int start, int limit) {
+        NodeGraphBuilder builder = NodeGraphBuilder.NodeGraphBuilderFactory.getInstance(run);
+        return builder.getPipelineNodeSteps(nodeId, getLink(), start, limit);
+    }
+
+    @Override
+    public String getETag() {
+        return PipelineNodeUtil.getETag(run, "steps", nodeId == null ? "" : nodeId);
     }
 
     @Override
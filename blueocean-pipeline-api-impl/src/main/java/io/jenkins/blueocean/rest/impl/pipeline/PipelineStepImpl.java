@@ -1,6 +1,8 @@
 package io.jenkins.blueocean.rest.impl.pipeline;
 
+import com.google.common.base.Supplier;
 import hudson.FilePath;
+import hudson.console.AnnotatedLargeText;
 import hudson.model.FileParameterValue;
 import hudson.model.ParameterDefinition;
 import hudson.model.ParameterValue;
@@ -57,7 +59,7 @@ public class PipelineStepImpl extends BluePipelineStep {
 
     @Override
     public String getDisplayName() {
-        return node.getNode().getDisplayName();
+        return node.getDisplayName();
     }
 
     @Override
@@ -84,7 +86,13 @@ public class PipelineStepImpl extends BluePipelineStep {
     public Object getLog() {
 
         if(PipelineNodeUtil.isLoggable.apply(node.getNode())){
-            return new LogResource(node.getNode().getAction(LogAction.class).getLogText());
+            final LogAction action = node.getNode().getAction(LogAction.class);
+            return new LogResource(new Supplier<AnnotatedLargeText>() {
+                @Override
+                public AnnotatedLargeText get() {
+                    return action.getLogText();
+                }
+            }, null, self.getHref() + "@" + node.getTiming().getStartTimeMillis()); // a rebuilt run with the same number has steps of the same URLs
         }
         return null;
     }
@@ -1,5 +1,7 @@
 package io.jenkins.blueocean.rest.impl.pipeline;
 
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import io.jenkins.blueocean.rest.model.BlueRun;
 import org.jenkinsci.plugins.workflow.cps.nodes.StepAtomNode;
 import org.jenkinsci.plugins.workflow.cps.nodes.StepEndNode;
@@ -26,11 +28,15 @@ import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
- * Gives steps inside
+ * Indexes steps of a pipeline run in a single walk of its flow graph.
+ *
+ * Gives all steps of the run, steps of each stage or parallel branch and steps by id:
  *
  * - Stage boundary: Stage boundary ends where another another stage start or this stage block ends
  * - branch boundary: branch block boundary
@@ -38,7 +44,6 @@ import java.util.Map;
  * @author Vivek Pandey
  */
 public class PipelineStepVisitor extends StandardChunkVisitor {
-    private final FlowNode node;
     private final WorkflowRun run;
 
     private final ArrayDeque<FlowNodeWrapper> steps = new ArrayDeque<>();
@@ -47,47 +52,81 @@ public class PipelineStepVisitor extends StandardChunkVisitor {
 
     private final Map<String,FlowNodeWrapper> stepMap = new HashMap<>();
 
-    private boolean stageStepsCollectionCompleted = false;
+    /** Steps of each stage or parallel branch, keyed by stage or branch id */
+    private final Map<String, List<FlowNodeWrapper>> nodeSteps = new HashMap<>();
+
+    private final Set<String> skippedStages = new HashSet<>();
+
+    /** Steps of the chunk being walked */
+    private StepBlock chunkSteps = new StepBlock(null);
 
-    private boolean inStageScope;
+    /** Block scoped stages the walk is currently in, inner most on top */
+    private final ArrayDeque<StepBlock> stageBlocks = new ArrayDeque<>();
+
+    /** Parallel branches the walk is currently in, inner most on top */
+    private final ArrayDeque<StepBlock> branchBlocks = new ArrayDeque<>();
+
+    private FlowNodeWrapper lastStep;
 
     private FlowNode currentStage;
 
     private ArrayDeque<String> stages = new ArrayDeque<>();
     private InputAction inputAction;
 
+    /** Input step of each step waiting for input, keyed by step id, looked up when first paused step is visited */
+    private Map<String, InputStep> pendingInputSteps;
+
+    private final FlowNodeClassifier classifier;
+
     private static final Logger logger = LoggerFactory.getLogger(PipelineStepVisitor.class);
 
-    public PipelineStepVisitor(WorkflowRun run, @Nullable final FlowNode node) {
-        this.node = node;
+    public PipelineStepVisitor(WorkflowRun run) {
+        this(run, new FlowNodeClassifier());
+    }
+
+    PipelineStepVisitor(WorkflowRun run, FlowNodeClassifier classifier) {
         this.run = run;
         this.inputAction = run.getAction(InputAction.class);
+        this.classifier = classifier;
+    }
+
+    /**
+     * Index of given steps, computed earlier and restored without walking the flow graph.
+     *
+     * @param steps all steps of the run
+     * @param nodeSteps steps of each stage or branch, including pre and post steps of first and last stages
+     * @see PipelineNodeGraphSnapshot
+     */
+    PipelineStepVisitor(WorkflowRun run, List<FlowNodeWrapper> steps, Map<String, List<FlowNodeWrapper>> nodeSteps) {
+        this(run, null);
+        for(FlowNodeWrapper step: steps){
+            this.steps.add(step);
+            this.stepMap.put(step.getId(), step);
+        }
+        this.nodeSteps.putAll(nodeSteps);
     }
 
     @Override
     public void parallelBranchStart(@Nonnull FlowNode parallelStartNode, @Nonnull FlowNode branchStartNode, @Nonnull ForkScanner scanner) {
-        if(stageStepsCollectionCompleted){ //skip
-            return;
-        }
-        if(node != null && branchStartNode.equals(node)){
-            stageStepsCollectionCompleted = true;
-        }else if(node != null && PipelineNodeUtil.isParallelBranch(node) && !branchStartNode.equals(node)){
-            resetSteps();
+        if(!branchBlocks.isEmpty()){
+            index(branchStartNode.getId(), branchBlocks.pop());
         }
     }
 
-
     @Override
     public void parallelBranchEnd(@Nonnull FlowNode parallelStartNode, @Nonnull FlowNode branchEndNode, @Nonnull ForkScanner scanner) {
-        if(!stageStepsCollectionCompleted && node != null && PipelineNodeUtil.isParallelBranch(node) && branchEndNode instanceof StepEndNode){
-            resetSteps();
+        StepBlock branch = new StepBlock(null);
+        //head of a running branch is reported as branch end after it was visited as step
+        if(lastStep != null && lastStep.getId().equals(branchEndNode.getId())){
+            branch.steps.push(lastStep);
         }
+        branchBlocks.push(branch);
     }
 
     @Override
     public void chunkStart(@Nonnull FlowNode startNode, @CheckForNull FlowNode beforeBlock, @Nonnull ForkScanner scanner) {
         super.chunkStart(startNode, beforeBlock, scanner);
-        if(PipelineNodeUtil.isStage(startNode) && !PipelineNodeUtil.isSyntheticStage(startNode)){
+        if(classifier.isStage(startNode) && !classifier.isSyntheticStage(startNode)){
             stages.push(startNode.getId());
         }
     }
@@ -95,14 +134,11 @@ public class PipelineStepVisitor extends StandardChunkVisitor {
     @Override
     public void chunkEnd(@Nonnull FlowNode endNode, @CheckForNull FlowNode afterChunk, @Nonnull ForkScanner scanner) {
         super.chunkEnd(endNode, afterChunk, scanner);
-        if(endNode instanceof StepEndNode && PipelineNodeUtil.isStage(((StepEndNode)endNode).getStartNode())){
+        if(endNode instanceof StepEndNode && classifier.isStage(((StepEndNode)endNode).getStartNode())){
             currentStage = ((StepEndNode)endNode).getStartNode();
+            stageBlocks.push(new StepBlock(currentStage.getId()));
         }
 
-        if(node!= null && endNode instanceof StepEndNode && ((StepEndNode)endNode).getStartNode().equals(node)){
-            this.stageStepsCollectionCompleted = false;
-            this.inStageScope = true;
-        }
         // if we're using marker-based (and not block-scoped) stages, add the last node as part of its contents
         if (!(endNode instanceof BlockEndNode)) {
             atomNode(null, endNode, afterChunk, scanner);
@@ -111,26 +147,28 @@ public class PipelineStepVisitor extends StandardChunkVisitor {
 
     @Override
     protected void handleChunkDone(@Nonnull MemoryFlowChunk chunk) {
-        if(stageStepsCollectionCompleted){ //if its completed no further action
-            return;
+        FlowNode stage = chunk.getFirstNode();
+        if(classifier.isSkippedStage(stage)){
+            skippedStages.add(stage.getId());
         }
 
-        if(node != null && chunk.getFirstNode().equals(node)){
-            stageStepsCollectionCompleted = true;
-            inStageScope = false;
-        }if(node != null && PipelineNodeUtil.isStage(node) && !inStageScope && !chunk.getFirstNode().equals(node)){
-            resetSteps();
+        //block scoped stage collected its nested stages too, marker based stage only what is in its chunk
+        StepBlock block = chunkSteps;
+        if(!stageBlocks.isEmpty() && stage.getId().equals(stageBlocks.peek().id)){
+            block = stageBlocks.pop();
         }
+        index(stage.getId(), block);
+        chunkSteps = new StepBlock(null);
     }
 
     @Override
     public void atomNode(@CheckForNull FlowNode before, @Nonnull FlowNode atomNode, @CheckForNull FlowNode after, @Nonnull ForkScanner scan) {
-        if(stageStepsCollectionCompleted && !PipelineNodeUtil.isSyntheticStage(currentStage)){
-            return;
-        }
-
         if(atomNode instanceof StepAtomNode &&
-                !PipelineNodeUtil.isSkippedStage(currentStage)) { //if skipped stage, we don't collect its steps
+                !classifier.isSkippedStage(currentStage)) { //if skipped stage, we don't collect its steps
+
+            if(stepMap.containsKey(atomNode.getId())){
+                return;
+            }
 
             long pause = PauseAction.getPauseDuration(atomNode);
             chunk.setPauseTimeMillis(chunk.getPauseTimeMillis()+pause);
@@ -145,71 +183,109 @@ public class PipelineStepVisitor extends StandardChunkVisitor {
             InputStep inputStep=null;
             if(PipelineNodeUtil.isPausedForInputStep((StepAtomNode) atomNode, inputAction)){
                 status = new NodeRunStatus(BlueRun.BlueRunResult.UNKNOWN, BlueRun.BlueRunState.PAUSED);
-                for(InputStepExecution execution: inputAction.getExecutions()){
-                    try {
-                        FlowNode node = execution.getContext().get(FlowNode.class);
-                        if(node != null && node.equals(atomNode)){
-                            inputStep = execution.getInput();
-                            break;
-                        }
-                    } catch (IOException | InterruptedException e) {
-                        logger.error("Error getting FlowNode from execution context: "+e.getMessage(), e);
-                    }
-                }
+                inputStep = getPendingInputStep(atomNode);
             }else{
                  status = new NodeRunStatus(atomNode);
             }
 
-            FlowNodeWrapper node = new FlowNodeWrapper(atomNode, status, times, inputStep, run);
-            if(PipelineNodeUtil.isPreSyntheticStage(currentStage)){
+            FlowNodeWrapper node = new FlowNodeWrapper(atomNode, status, times, inputStep, run, classifier);
+            if(classifier.isPreSyntheticStage(currentStage)){
                 preSteps.add(node);
-            }else if(PipelineNodeUtil.isPostSyntheticStage(currentStage)){
+            }else if(classifier.isPostSyntheticStage(currentStage)){
                 postSteps.add(node);
             }else {
-                if(!steps.contains(node)) {
-                    steps.push(node);
+                steps.push(node);
+                chunkSteps.steps.push(node);
+                for(StepBlock stage: stageBlocks){
+                    stage.steps.push(node);
+                }
+                for(StepBlock branch: branchBlocks){
+                    branch.steps.push(node);
                 }
             }
             stepMap.put(node.getId(), node);
+            lastStep = node;
         }
     }
 
-    public List<FlowNodeWrapper> getSteps(){
-        List<FlowNodeWrapper> s = new ArrayList<>();
-        if(node != null){
-            if(PipelineNodeUtil.isSkippedStage(node)){
-                return Collections.emptyList();
-            }
-            String first=null;
-            String last=null;
-            if(!stages.isEmpty()) {
-                first = stages.getFirst();
-                last = stages.getLast();
+    private InputStep getPendingInputStep(FlowNode step){
+        if(pendingInputSteps == null){
+            pendingInputSteps = new HashMap<>();
+            for(InputStepExecution execution: inputAction.getExecutions()){
+                try {
+                    FlowNode node = execution.getContext().get(FlowNode.class);
+                    if(node != null && !pendingInputSteps.containsKey(node.getId())){
+                        pendingInputSteps.put(node.getId(), execution.getInput());
+                    }
+                } catch (IOException | InterruptedException e) {
+                    logger.error("Error getting FlowNode from execution context: "+e.getMessage(), e);
+                }
             }
+        }
+        return pendingInputSteps.get(step.getId());
+    }
 
-            if(first!= null && node.getId().equals(first)){
-                s.addAll(preSteps);
-            }
-            s.addAll(steps);
-            if(last!= null && node.getId().equals(last)){
-                s.addAll(postSteps);
-            }
+    /** Gives all steps of this run */
+    public List<FlowNodeWrapper> getSteps(){
+        return Lists.newArrayList(stepsOf(null));
+    }
+
+    /** Gives steps of given stage or parallel branch, empty list if there is no such stage or branch */
+    public List<FlowNodeWrapper> getSteps(@Nonnull String nodeId){
+        return Lists.newArrayList(stepsOf(nodeId));
+    }
 
-        }else {
-            s.addAll(preSteps);
-            s.addAll(steps);
-            s.addAll(postSteps);
+    /**
+     * Same as {@link #getSteps()}, or {@link #getSteps(String)} if nodeId is given, but as a view of the index
+     * instead of a copy, so that a page of steps can be taken without going through all of them.
+     */
+    Iterable<FlowNodeWrapper> stepsOf(@Nullable String nodeId){
+        if(nodeId == null){
+            return Iterables.concat(preSteps, steps, postSteps);
+        }
+        List<FlowNodeWrapper> nodeSteps = this.nodeSteps.get(nodeId);
+        if(nodeSteps == null || skippedStages.contains(nodeId)){
+            return Collections.emptyList();
         }
-        return s;
+        boolean first = !stages.isEmpty() && nodeId.equals(stages.getFirst());
+        boolean last = !stages.isEmpty() && nodeId.equals(stages.getLast());
+        return Iterables.concat(
+            first ? preSteps : Collections.<FlowNodeWrapper>emptyList(),
+            Collections.unmodifiableList(nodeSteps),
+            last ? postSteps : Collections.<FlowNodeWrapper>emptyList());
     }
 
     public FlowNodeWrapper getStep(String id){
         return stepMap.get(id);
     }
 
-    private void resetSteps(){
-        steps.clear();
-        stepMap.clear();
+    /** Number of steps indexed */
+    public int size(){
+        return stepMap.size();
+    }
+
+    /** Drops {@link FlowNode}s of indexed steps, see {@link FlowNodeWrapper#releaseNode()} */
+    void releaseNodes(){
+        for(FlowNodeWrapper step: stepMap.values()){
+            step.releaseNode();
+        }
     }
 
+    private void index(String id, StepBlock block){
+        List<FlowNodeWrapper> s = nodeSteps.get(id);
+        if(s == null){
+            nodeSteps.put(id, new ArrayList<>(block.steps));
+        }else{ // same stage or branch seen again, keep its earlier steps first
+            s.addAll(0, block.steps);
+        }
+    }
+
+    private static class StepBlock {
+        private final String id;
+        private final ArrayDeque<FlowNodeWrapper> steps = new ArrayDeque<>();
+
+        private StepBlock(String id) {
+            this.id = id;
+        }
+    }
 }
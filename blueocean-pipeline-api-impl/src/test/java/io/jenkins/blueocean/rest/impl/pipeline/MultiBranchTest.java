@@ -398,6 +398,32 @@ public class MultiBranchTest extends PipelineBaseTest {
     }
 
 
+    @Test
+    public void getMultiBranchPipelineRunsPaged() throws Exception {
+        WorkflowMultiBranchProject mp = j.jenkins.createProject(WorkflowMultiBranchProject.class, "p");
+        mp.getSourcesList().add(new BranchSource(new GitSCMSource(null, sampleRepo.toString(), "", "*", "", false),
+            new DefaultBranchPropertyStrategy(new BranchProperty[0])));
+        scheduleAndFindBranchProject(mp);
+        j.waitUntilNoActivity();
+
+        WorkflowJob p = findBranchProject(mp, "master");
+        j.assertBuildStatusSuccess(p.scheduleBuild2(0));
+
+        List<Map> all = get("/organizations/jenkins/pipelines/p/runs/?start=0&limit=10", List.class);
+        Assert.assertEquals(4, all.size());
+        Assert.assertEquals("master", all.get(0).get("pipeline"));
+        Assert.assertEquals("2", all.get(0).get("id"));
+
+        // pages are taken from the runs of all branches, not from each branch
+        for(int i = 0; i < all.size(); i++){
+            List<Map> page = get("/organizations/jenkins/pipelines/p/runs/?start="+i+"&limit=1", List.class);
+            Assert.assertEquals(1, page.size());
+            Assert.assertEquals(all.get(i).get("pipeline"), page.get(0).get("pipeline"));
+            Assert.assertEquals(all.get(i).get("id"), page.get(0).get("id"));
+        }
+        Assert.assertEquals(0, get("/organizations/jenkins/pipelines/p/runs/?start=4&limit=1", List.class).size());
+    }
+
     @Test
     public void getMultiBranchPipelineActivityRuns() throws Exception {
         WorkflowMultiBranchProject mp = j.jenkins.createProject(WorkflowMultiBranchProject.class, "p");
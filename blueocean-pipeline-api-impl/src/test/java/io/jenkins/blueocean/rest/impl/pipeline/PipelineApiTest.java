@@ -1,6 +1,7 @@
 package io.jenkins.blueocean.rest.impl.pipeline;
 
 import com.mashape.unirest.http.HttpResponse;
+import com.mashape.unirest.http.Unirest;
 import hudson.matrix.Axis;
 import hudson.matrix.MatrixBuild;
 import hudson.matrix.MatrixProject;
@@ -9,6 +10,7 @@ import hudson.model.FreeStyleProject;
 import hudson.model.Result;
 import hudson.model.Run;
 import hudson.tasks.Shell;
+import org.apache.commons.io.IOUtils;
 import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
 import org.jenkinsci.plugins.workflow.job.WorkflowJob;
 import org.jenkinsci.plugins.workflow.job.WorkflowRun;
@@ -16,7 +18,11 @@ import org.junit.Assert;
 import org.junit.Test;
 import org.kohsuke.stapler.AcceptHeader;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
@@ -209,6 +215,196 @@ public class PipelineApiTest extends PipelineBaseTest {
         Assert.assertTrue(size > 0);
     }
 
+    @Test
+    public void getPipelineJobRunsLogRangeTest() throws Exception {
+        WorkflowJob job1 = j.jenkins.createProject(WorkflowJob.class, "pipeline1");
+        job1.setDefinition(new CpsFlowDefinition("" +
+            "node {" +
+            "   echo ('Building'); " +
+            "}"));
+
+        WorkflowRun b1 = job1.scheduleBuild2(0).get();
+        j.assertBuildStatusSuccess(b1);
+        // ranges are of the plain text, the same text a whole response has
+        ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        b1.getLogText().writeLogTo(0, plain);
+        byte[] text = plain.toByteArray();
+        long length = text.length;
+
+        HttpResponse<InputStream> binary = Unirest.get(baseUrl + "/organizations/jenkins/pipelines/pipeline1/runs/"+b1.getId()+"/log?start=0")
+            .header("Accept", "text/plain")
+            .header("Authorization", "Bearer "+jwtToken)
+            .asBinary();
+        Assert.assertEquals(200, binary.getStatus());
+        Assert.assertEquals("Accept-Encoding", binary.getHeaders().getFirst("Vary"));
+        Assert.assertArrayEquals(text, IOUtils.toByteArray(binary.getBody()));
+
+        binary = Unirest.get(baseUrl + "/organizations/jenkins/pipelines/pipeline1/runs/"+b1.getId()+"/log")
+            .header("Accept", "text/plain")
+            .header("Authorization", "Bearer "+jwtToken)
+            .header("Range", "bytes=0-9")
+            .asBinary();
+        Assert.assertEquals(206, binary.getStatus());
+        Assert.assertEquals("bytes 0-9/"+length, binary.getHeaders().getFirst("Content-Range"));
+        Assert.assertEquals("Accept-Encoding", binary.getHeaders().getFirst("Vary"));
+        Assert.assertArrayEquals(Arrays.copyOfRange(text, 0, 10), IOUtils.toByteArray(binary.getBody()));
+
+        binary = Unirest.get(baseUrl + "/organizations/jenkins/pipelines/pipeline1/runs/"+b1.getId()+"/log")
+            .header("Accept", "text/plain")
+            .header("Authorization", "Bearer "+jwtToken)
+            .header("Range", "bytes=5-")
+            .asBinary();
+        Assert.assertEquals(206, binary.getStatus());
+        Assert.assertEquals("bytes 5-"+(length - 1)+"/"+length, binary.getHeaders().getFirst("Content-Range"));
+        Assert.assertArrayEquals(Arrays.copyOfRange(text, 5, text.length), IOUtils.toByteArray(binary.getBody()));
+
+        HttpResponse<String> response = Unirest.get(baseUrl + "/organizations/jenkins/pipelines/pipeline1/runs/"+b1.getId()+"/log")
+            .header("Accept", "text/plain")
+            .header("Authorization", "Bearer "+jwtToken)
+            .header("Range", "bytes="+length+"-")
+            .asString();
+        Assert.assertEquals(416, response.getStatus());
+        Assert.assertEquals("bytes */"+length, response.getHeaders().getFirst("Content-Range"));
+    }
+
+    @Test
+    public void getPipelineJobRunsLogLinesTest() throws Exception {
+        WorkflowJob job1 = j.jenkins.createProject(WorkflowJob.class, "pipeline1");
+        job1.setDefinition(new CpsFlowDefinition("" +
+            "node {" +
+            "   echo ('Building'); " +
+            "}"));
+
+        WorkflowRun b1 = job1.scheduleBuild2(0).get();
+        j.assertBuildStatusSuccess(b1);
+        List<String> lines = b1.getLog(Integer.MAX_VALUE);
+
+        HttpResponse<String> response = Unirest.get(baseUrl + "/organizations/jenkins/pipelines/pipeline1/runs/"+b1.getId()+"/log?startLine=0&count=1")
+            .header("Accept", "text/plain")
+            .header("Authorization", "Bearer "+jwtToken)
+            .asString();
+        Assert.assertEquals(200, response.getStatus());
+        Assert.assertEquals("0", response.getHeaders().getFirst("X-Start-Line"));
+        Assert.assertEquals(String.valueOf(lines.size()), response.getHeaders().getFirst("X-Line-Count"));
+        Assert.assertEquals(lines.get(0), response.getBody().trim());
+
+        response = Unirest.get(baseUrl + "/organizations/jenkins/pipelines/pipeline1/runs/"+b1.getId()+"/log?lastLines=1")
+            .header("Accept", "text/plain")
+            .header("Authorization", "Bearer "+jwtToken)
+            .asString();
+        Assert.assertEquals(200, response.getStatus());
+        Assert.assertEquals(String.valueOf(lines.size() - 1), response.getHeaders().getFirst("X-Start-Line"));
+        Assert.assertEquals(lines.get(lines.size() - 1), response.getBody().trim());
+        Assert.assertEquals(String.valueOf(b1.getLogFile().length()), response.getHeaders().getFirst("X-Text-Size"));
+
+        for(String query: new String[]{"startLine=x", "startLine=0&count=1x", "lastLines=99999999999999999999", "lastLines=-1"}) {
+            response = Unirest.get(baseUrl + "/organizations/jenkins/pipelines/pipeline1/runs/"+b1.getId()+"/log?"+query)
+                .header("Accept", "text/plain")
+                .header("Authorization", "Bearer "+jwtToken)
+                .asString();
+            Assert.assertEquals(query, 400, response.getStatus());
+        }
+    }
+
+    @Test
+    public void getPipelineStepLogLinesTest() throws Exception {
+        WorkflowJob job1 = j.jenkins.createProject(WorkflowJob.class, "pipeline1");
+        job1.setDefinition(new CpsFlowDefinition("" +
+            "echo ('first\\nsecond\\nthird'); "));
+
+        WorkflowRun b1 = job1.scheduleBuild2(0).get();
+        j.assertBuildStatusSuccess(b1);
+        List<Map> steps = get("/organizations/jenkins/pipelines/pipeline1/runs/"+b1.getId()+"/steps/", List.class);
+        Assert.assertEquals(1, steps.size());
+
+        // second request is served from the index kept for the step
+        for(int i = 0; i < 2; i++) {
+            HttpResponse<String> response = Unirest.get(baseUrl + "/organizations/jenkins/pipelines/pipeline1/runs/"+b1.getId()+"/steps/"+steps.get(0).get("id")+"/log?startLine=1&count=1")
+                .header("Accept", "text/plain")
+                .header("Authorization", "Bearer "+jwtToken)
+                .asString();
+            Assert.assertEquals(200, response.getStatus());
+            Assert.assertEquals("1", response.getHeaders().getFirst("X-Start-Line"));
+            Assert.assertEquals("3", response.getHeaders().getFirst("X-Line-Count"));
+            Assert.assertEquals("second", response.getBody().trim());
+        }
+    }
+
+    @Test
+    public void getPipelineJobRunsLogCompressedTest() throws Exception {
+        WorkflowJob job1 = j.jenkins.createProject(WorkflowJob.class, "pipeline1");
+        job1.setDefinition(new CpsFlowDefinition("" +
+            "for (int i = 0; i < 200; i++) { " +
+            "   echo ('line ' + i + ' of a log long enough to be compressed'); " +
+            "}"));
+
+        WorkflowRun b1 = job1.scheduleBuild2(0).get();
+        j.assertBuildStatusSuccess(b1);
+        File compressed = new File(b1.getLogFile().getPath() + ".plain.gz");
+        for(int i = 0; i < 100 && !compressed.isFile(); i++){
+            Thread.sleep(100);
+        }
+        Assert.assertTrue(compressed.isFile());
+
+        HttpResponse<String> response = Unirest.get(baseUrl + "/organizations/jenkins/pipelines/pipeline1/runs/"+b1.getId()+"/log?start=0")
+            .header("Accept", "text/plain")
+            .header("Accept-Encoding", "gzip")
+            .header("Authorization", "Bearer "+jwtToken)
+            .asString();
+        Assert.assertEquals(200, response.getStatus());
+        String etag = response.getHeaders().getFirst("ETag");
+        Assert.assertNotNull(etag);
+        Assert.assertTrue(response.getBody().contains("line 199 of a log"));
+
+        response = Unirest.get(baseUrl + "/organizations/jenkins/pipelines/pipeline1/runs/"+b1.getId()+"/log?start=0")
+            .header("Accept", "text/plain")
+            .header("Accept-Encoding", "gzip")
+            .header("Authorization", "Bearer "+jwtToken)
+            .header("If-None-Match", etag)
+            .asString();
+        Assert.assertEquals(304, response.getStatus());
+
+        // whole log, without start, is sent compressed too
+        response = Unirest.get(baseUrl + "/organizations/jenkins/pipelines/pipeline1/runs/"+b1.getId()+"/log")
+            .header("Accept", "text/plain")
+            .header("Accept-Encoding", "gzip")
+            .header("Authorization", "Bearer "+jwtToken)
+            .asString();
+        Assert.assertEquals(etag, response.getHeaders().getFirst("ETag"));
+
+        // a tail starts at an offset of the log file, it's streamed from there
+        response = Unirest.get(baseUrl + "/organizations/jenkins/pipelines/pipeline1/runs/"+b1.getId()+"/log?start=100")
+            .header("Accept", "text/plain")
+            .header("Accept-Encoding", "gzip")
+            .header("Authorization", "Bearer "+jwtToken)
+            .asString();
+        Assert.assertEquals(200, response.getStatus());
+        Assert.assertNull(response.getHeaders().getFirst("ETag"));
+        Assert.assertTrue(response.getBody().contains("line 199 of a log"));
+    }
+
+    @Test
+    public void getPipelineJobRunsLogFollowTest() throws Exception {
+        WorkflowJob job1 = j.jenkins.createProject(WorkflowJob.class, "pipeline1");
+        job1.setDefinition(new CpsFlowDefinition("" +
+            "echo ('first'); " +
+            "sleep 3; " +
+            "echo ('last'); "));
+
+        WorkflowRun b1 = job1.scheduleBuild2(0).waitForStart();
+        j.waitForMessage("first", b1);
+
+        // one response pushes the log as it's appended and ends once the build is done
+        HttpResponse<String> response = Unirest.get(baseUrl + "/organizations/jenkins/pipelines/pipeline1/runs/"+b1.getId()+"/log?follow=true&start=0")
+            .header("Accept", "text/plain")
+            .header("Authorization", "Bearer "+jwtToken)
+            .asString();
+        Assert.assertEquals(200, response.getStatus());
+        j.assertBuildStatusSuccess(j.waitForCompletion(b1));
+        Assert.assertTrue(response.getBody().contains("first"));
+        Assert.assertTrue(response.getBody().contains("last"));
+    }
+
     @Test
     public void getPipelineJobActivities() throws Exception {
         WorkflowJob job1 = j.jenkins.createProject(WorkflowJob.class, "pipeline1");
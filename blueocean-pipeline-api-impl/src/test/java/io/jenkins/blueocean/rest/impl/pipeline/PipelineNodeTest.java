@@ -1,9 +1,17 @@
 package io.jenkins.blueocean.rest.impl.pipeline;
 
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.mashape.unirest.http.HttpResponse;
+import com.mashape.unirest.http.Unirest;
 import hudson.model.Result;
 import hudson.model.queue.QueueTaskFuture;
+import io.jenkins.blueocean.commons.JsonConverter;
+import io.jenkins.blueocean.rest.hal.Link;
+import io.jenkins.blueocean.rest.model.BluePipelineNode;
+import io.jenkins.blueocean.rest.model.BlueRun;
 import io.jenkins.blueocean.rest.model.scm.GitSampleRepoRule;
 import jenkins.branch.BranchSource;
 import jenkins.plugins.git.GitSCMSource;
@@ -22,6 +30,7 @@ import org.junit.Rule;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
@@ -2086,6 +2095,418 @@ public class PipelineNodeTest extends PipelineBaseTest {
         Assert.assertEquals("FINISHED", resp.get("state"));
     }
 
+    @Test
+    public void completedRunGraphIsCached() throws Exception {
+        WorkflowJob job1 = j.jenkins.createProject(WorkflowJob.class, "pipeline1");
+        job1.setDefinition(new CpsFlowDefinition("node {\n" +
+            "  stage 'build'\n" +
+            "  echo 'building'\n" +
+            "}"));
+        WorkflowRun b1 = job1.scheduleBuild2(0).get();
+        j.assertBuildStatusSuccess(b1);
+
+        job1.setDefinition(new CpsFlowDefinition("node {\n" +
+            "  stage 'build'\n" +
+            "  echo 'building'\n" +
+            "  stage 'test'\n" +
+            "  echo 'testing'\n" +
+            "}"));
+        WorkflowRun b2 = job1.scheduleBuild2(0).get();
+        j.assertBuildStatusSuccess(b2);
+
+        NodeGraphBuilder graph = NodeGraphBuilder.NodeGraphBuilderFactory.getInstance(b1);
+        Assert.assertSame(graph, NodeGraphBuilder.NodeGraphBuilderFactory.getInstance(b1));
+
+        List<FlowNodeWrapper> nodes = graph.getPipelineNodes();
+        Assert.assertEquals(1, nodes.size());
+
+        // union must not stitch future nodes into the cached graph
+        List<BluePipelineNode> union = graph.union(NodeGraphBuilder.NodeGraphBuilderFactory.getInstance(b2).getPipelineNodes(),
+            new Link("/organizations/jenkins/pipelines/pipeline1/runs/1/nodes/"));
+        Assert.assertEquals(2, union.size());
+        Assert.assertEquals(1, union.get(0).getEdges().size());
+        Assert.assertTrue(graph.getPipelineNodes().get(0).getEdges().isEmpty());
+    }
+
+    @Test
+    public void cachedGraphWeighsSteps() throws Exception {
+        WorkflowJob job1 = j.jenkins.createProject(WorkflowJob.class, "pipeline1");
+        job1.setDefinition(new CpsFlowDefinition("node {\n" +
+            "  stage ('build') {\n" +
+            "    for (int i = 0; i < 50; i++) {\n" +
+            "      echo \"building ${i}\"\n" +
+            "    }\n" +
+            "  }\n" +
+            "  stage ('deploy') {\n" +
+            "    input message: 'Deploy?'\n" +
+            "  }\n" +
+            "}"));
+        WorkflowRun b1 = job1.scheduleBuild2(0).getStartCondition().get();
+        CpsFlowExecution e = (CpsFlowExecution) b1.getExecutionPromise().get();
+        while (b1.getAction(InputAction.class) == null) {
+            e.waitForSuspension();
+        }
+
+        // steps of a running build are indexed only when asked for, the cached graph is weighed again then
+        PipelineNodeGraphCache cache = PipelineNodeGraphCache.get();
+        PipelineNodeGraphVisitor graph = cache.getGraph(b1);
+        Assert.assertEquals(2, graph.getPipelineNodes().size());
+        Assert.assertEquals(2, cache.getWeight(b1));
+
+        Assert.assertEquals(51, graph.getStepIndex().getSteps().size());
+        Assert.assertEquals(2 + 51, cache.getWeight(b1));
+
+        // graph of a completed build is cached with its steps
+        WorkflowJob job2 = j.jenkins.createProject(WorkflowJob.class, "pipeline2");
+        job2.setDefinition(new CpsFlowDefinition("node {\n" +
+            "  stage ('build') {\n" +
+            "    for (int i = 0; i < 50; i++) {\n" +
+            "      echo \"building ${i}\"\n" +
+            "    }\n" +
+            "  }\n" +
+            "}"));
+        WorkflowRun b2 = j.assertBuildStatusSuccess(job2.scheduleBuild2(0));
+        cache.invalidate(b2);
+        cache.getGraph(b2);
+        Assert.assertEquals(1 + 50, cache.getWeight(b2));
+    }
+
+    @Test
+    public void completedRunGraphSnapshot() throws Exception {
+        WorkflowJob job1 = j.jenkins.createProject(WorkflowJob.class, "pipeline1");
+        job1.setDefinition(new CpsFlowDefinition("node {\n" +
+            "  stage ('build') {\n" +
+            "    echo 'building'\n" +
+            "  }\n" +
+            "  stage ('test') {\n" +
+            "    parallel unit: { echo 'unit' }, integration: { echo 'integration' }\n" +
+            "  }\n" +
+            "}"));
+        WorkflowRun b1 = job1.scheduleBuild2(0).get();
+        j.assertBuildStatusSuccess(b1);
+
+        PipelineNodeGraphVisitor graph = new PipelineNodeGraphVisitor(b1);
+        PipelineNodeGraphSnapshot.save(b1, graph);
+        Assert.assertTrue(PipelineNodeGraphSnapshot.getFile(b1).isFile());
+
+        PipelineNodeGraphVisitor restored = PipelineNodeGraphSnapshot.load(b1);
+        assertNotNull(restored);
+
+        List<FlowNodeWrapper> nodes = graph.getPipelineNodes();
+        List<FlowNodeWrapper> restoredNodes = restored.getPipelineNodes();
+        Assert.assertEquals(4, restoredNodes.size());
+        for(int i = 0; i < nodes.size(); i++){
+            FlowNodeWrapper n = nodes.get(i);
+            FlowNodeWrapper r = restoredNodes.get(i);
+            Assert.assertEquals(n.getId(), r.getId());
+            Assert.assertEquals(n.getDisplayName(), r.getDisplayName());
+            Assert.assertEquals(n.type, r.type);
+            Assert.assertEquals(n.getEdges(), r.getEdges());
+            Assert.assertEquals(n.getParents().size(), r.getParents().size());
+            Assert.assertEquals(n.getStatus().getResult(), r.getStatus().getResult());
+            Assert.assertEquals(n.getStatus().getState(), r.getStatus().getState());
+            Assert.assertEquals(n.getTiming().getStartTimeMillis(), r.getTiming().getStartTimeMillis());
+            Assert.assertEquals(n.getTiming().getTotalDurationMillis(), r.getTiming().getTotalDurationMillis());
+            Assert.assertEquals(graph.getStepIndex().getSteps(n.getId()), restored.getStepIndex().getSteps(r.getId()));
+        }
+        Assert.assertEquals(graph.getStepIndex().getSteps(), restored.getStepIndex().getSteps());
+
+        // edges and parents are int indexes into the graph, its nodes can't be changed
+        Assert.assertEquals(Arrays.asList(nodes.get(2).getId(), nodes.get(3).getId()), nodes.get(1).getEdges());
+        Assert.assertSame(nodes.get(1), nodes.get(2).getFirstParent());
+        try {
+            nodes.get(0).addEdge("12345");
+            Assert.fail("cached graph node was changed");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        //FlowNode is looked up only when asked for
+        Assert.assertEquals(nodes.get(0).getNode(), restoredNodes.get(0).getNode());
+    }
+
+    @Test
+    public void nodesChangedSinceToken() throws Exception {
+        WorkflowJob job1 = j.jenkins.createProject(WorkflowJob.class, "pipeline1");
+        job1.setDefinition(new CpsFlowDefinition("node {\n" +
+            "  stage ('build') {\n" +
+            "    echo 'building'\n" +
+            "  }\n" +
+            "  stage ('test') {\n" +
+            "    echo 'testing'\n" +
+            "  }\n" +
+            "}"));
+        WorkflowRun b1 = job1.scheduleBuild2(0).get();
+        j.assertBuildStatusSuccess(b1);
+
+        Link link = new Link("/organizations/jenkins/pipelines/pipeline1/runs/1/");
+        List<BluePipelineNode> nodes = new PipelineNodeContainerImpl(b1, link).nodes();
+        Assert.assertEquals(2, nodes.size());
+
+        PipelineNodeGraphVersions.Changes changes = PipelineNodeGraphVersions.get()
+            .update(b1, "1", Suppliers.ofInstance(nodes), null);
+        Assert.assertFalse(changes.delta);
+        Assert.assertEquals(2, changes.nodes.size());
+
+        // nothing changed since
+        PipelineNodeGraphVersions.Changes next = PipelineNodeGraphVersions.get()
+            .update(b1, "2", Suppliers.ofInstance(new PipelineNodeContainerImpl(b1, link).nodes()), changes.token);
+        Assert.assertTrue(next.delta);
+        Assert.assertEquals(0, next.nodes.size());
+        Assert.assertEquals(changes.token, next.token);
+
+        // same graph isn't compared again, nodes aren't needed for an empty delta
+        next = PipelineNodeGraphVersions.get().update(b1, "2", new Supplier<List<BluePipelineNode>>() {
+            @Override
+            public List<BluePipelineNode> get() {
+                throw new AssertionError("nodes of an unchanged graph asked for");
+            }
+        }, changes.token);
+        Assert.assertTrue(next.delta);
+        Assert.assertEquals(0, next.nodes.size());
+
+        // only the node that went away can't be given as change
+        next = PipelineNodeGraphVersions.get().update(b1, "3", Suppliers.ofInstance(nodes.subList(1, 2)), changes.token);
+        Assert.assertFalse(next.delta);
+        Assert.assertEquals(1, next.nodes.size());
+        Assert.assertFalse(changes.token.equals(next.token));
+
+        // unknown token gives all nodes
+        next = PipelineNodeGraphVersions.get().update(b1, "4", Suppliers.ofInstance(nodes), "1.1");
+        Assert.assertFalse(next.delta);
+        Assert.assertEquals(2, next.nodes.size());
+    }
+
+    @Test
+    public void completedRunNodesNotModified() throws Exception {
+        WorkflowJob job1 = j.jenkins.createProject(WorkflowJob.class, "pipeline1");
+        job1.setDefinition(new CpsFlowDefinition("node {\n" +
+            "  stage ('build') {\n" +
+            "    echo 'building'\n" +
+            "  }\n" +
+            "}"));
+        WorkflowRun b1 = job1.scheduleBuild2(0).get();
+        j.assertBuildStatusSuccess(b1);
+
+        List<Map> nodes = get("/organizations/jenkins/pipelines/pipeline1/runs/1/nodes/", List.class);
+        String nodeId = (String) nodes.get(0).get("id");
+        for(String path: new String[]{"/nodes/", "/steps/", "/nodes/" + nodeId + "/steps/"}) {
+            String url = "/organizations/jenkins/pipelines/pipeline1/runs/1" + path;
+            HttpResponse<String> response = get(url, 200, HttpResponse.class);
+            String eTag = response.getHeaders().getFirst("ETag");
+            assertNotNull(eTag);
+
+            response = Unirest.get(baseUrl + url)
+                .header("Authorization", "Bearer " + jwtToken)
+                .header("If-None-Match", eTag)
+                .asString();
+            Assert.assertEquals(304, response.getStatus());
+
+            // another page isn't the same response
+            response = Unirest.get(baseUrl + url + "?start=1")
+                .header("Authorization", "Bearer " + jwtToken)
+                .header("If-None-Match", eTag)
+                .asString();
+            Assert.assertEquals(200, response.getStatus());
+            Assert.assertFalse(eTag.equals(response.getHeaders().getFirst("ETag")));
+        }
+
+        // a steps tag doesn't make up a node that isn't there
+        HttpResponse<String> response = Unirest.get(baseUrl + "/organizations/jenkins/pipelines/pipeline1/runs/1/nodes/12345/steps/")
+            .header("Authorization", "Bearer " + jwtToken)
+            .header("If-None-Match", "*")
+            .asString();
+        Assert.assertEquals(404, response.getStatus());
+    }
+
+    @Test
+    public void runningRunNodesNotModified() throws Exception {
+        WorkflowJob job1 = j.jenkins.createProject(WorkflowJob.class, "pipeline1");
+        job1.setDefinition(new CpsFlowDefinition("node {\n" +
+            "  stage ('build') {\n" +
+            "    echo 'building'\n" +
+            "  }\n" +
+            "  stage ('deploy') {\n" +
+            "    input message: 'Deploy?'\n" +
+            "  }\n" +
+            "}"));
+        WorkflowRun b1 = job1.scheduleBuild2(0).getStartCondition().get();
+        CpsFlowExecution e = (CpsFlowExecution) b1.getExecutionPromise().get();
+        while (b1.getAction(InputAction.class) == null) {
+            e.waitForSuspension();
+        }
+
+        // graph of the build waiting for input doesn't change, nor does its tag
+        String url = "/organizations/jenkins/pipelines/pipeline1/runs/1/nodes/";
+        HttpResponse<String> response = get(url, 200, HttpResponse.class);
+        String eTag = response.getHeaders().getFirst("ETag");
+        assertNotNull(eTag);
+
+        response = Unirest.get(baseUrl + url)
+            .header("Authorization", "Bearer " + jwtToken)
+            .header("If-None-Match", eTag)
+            .asString();
+        Assert.assertEquals(304, response.getStatus());
+    }
+
+    @Test
+    public void runningRunGraphReusesEndedStages() throws Exception {
+        WorkflowJob job1 = j.jenkins.createProject(WorkflowJob.class, "pipeline1");
+        job1.setDefinition(new CpsFlowDefinition("node {\n" +
+            "  stage ('build') {\n" +
+            "    echo 'building'\n" +
+            "  }\n" +
+            "  stage ('deploy') {\n" +
+            "    input message: 'Deploy?'\n" +
+            "  }\n" +
+            "}"));
+        WorkflowRun b1 = job1.scheduleBuild2(0).getStartCondition().get();
+        CpsFlowExecution e = (CpsFlowExecution) b1.getExecutionPromise().get();
+        while (b1.getAction(InputAction.class) == null) {
+            e.waitForSuspension();
+        }
+
+        PipelineNodeGraphVisitor previous = new PipelineNodeGraphVisitor(b1);
+        PipelineNodeGraphVisitor graph = new PipelineNodeGraphVisitor(b1, previous);
+        List<FlowNodeWrapper> previousNodes = previous.getPipelineNodes();
+        List<FlowNodeWrapper> nodes = graph.getPipelineNodes();
+        Assert.assertEquals(2, nodes.size());
+
+        // ended stage is taken from the previous graph, the paused one is computed again
+        Assert.assertSame(previousNodes.get(0).getTiming(), nodes.get(0).getTiming());
+        Assert.assertSame(previousNodes.get(0).getStatus(), nodes.get(0).getStatus());
+        Assert.assertNotSame(previousNodes.get(1).getStatus(), nodes.get(1).getStatus());
+        Assert.assertEquals(BlueRun.BlueRunState.PAUSED, nodes.get(1).getStatus().getState());
+    }
+
+    @Test
+    public void stepsArePaged() throws Exception {
+        WorkflowJob job1 = j.jenkins.createProject(WorkflowJob.class, "pipeline1");
+        job1.setDefinition(new CpsFlowDefinition("node {\n" +
+            "  stage ('build') {\n" +
+            "    echo 'one'\n" +
+            "    echo 'two'\n" +
+            "    echo 'three'\n" +
+            "  }\n" +
+            "}"));
+        WorkflowRun b1 = job1.scheduleBuild2(0).get();
+        j.assertBuildStatusSuccess(b1);
+
+        List<Map> steps = get("/organizations/jenkins/pipelines/pipeline1/runs/1/steps/", List.class);
+        Assert.assertEquals(3, steps.size());
+
+        List<Map> page = get("/organizations/jenkins/pipelines/pipeline1/runs/1/steps/?start=1&limit=1", List.class);
+        Assert.assertEquals(1, page.size());
+        Assert.assertEquals(steps.get(1).get("id"), page.get(0).get("id"));
+
+        List<Map> nodes = get("/organizations/jenkins/pipelines/pipeline1/runs/1/nodes/", List.class);
+        page = get("/organizations/jenkins/pipelines/pipeline1/runs/1/nodes/"+nodes.get(0).get("id")+"/steps/?start=2&limit=5", List.class);
+        Assert.assertEquals(1, page.size());
+        Assert.assertEquals(steps.get(2).get("id"), page.get(0).get("id"));
+    }
+
+    @Test
+    public void mergedNodeLogs() throws Exception {
+        WorkflowJob job1 = j.jenkins.createProject(WorkflowJob.class, "pipeline1");
+        job1.setDefinition(new CpsFlowDefinition("stage ('build') {\n" +
+            "  echo 'Building...'\n" +
+            "}\n" +
+            "stage ('test') {\n" +
+            "  parallel 'unit':{\n" +
+            "    echo 'Unit testing...'\n" +
+            "  },'ui':{\n" +
+            "    echo 'UI testing...'\n" +
+            "  }\n" +
+            "}"));
+        WorkflowRun b1 = job1.scheduleBuild2(0).get();
+        j.assertBuildStatusSuccess(b1);
+
+        String log = get("/organizations/jenkins/pipelines/pipeline1/runs/1/nodes/log/", String.class);
+        int build = log.indexOf("=== Stage: build ===");
+        int building = log.indexOf("Building...");
+        int test = log.indexOf("=== Stage: test ===");
+        int unit = log.indexOf("=== Branch: unit (Stage: test) ===");
+        int unitTesting = log.indexOf("Unit testing...");
+        int ui = log.indexOf("=== Branch: ui (Stage: test) ===");
+        int uiTesting = log.indexOf("UI testing...");
+        // branches come in the order of the nodes, by name
+        Assert.assertTrue(log, 0 <= build && build < building && building < test && test < ui
+            && ui < uiTesting && uiTesting < unit && unit < unitTesting);
+
+        List<Map> nodes = get("/organizations/jenkins/pipelines/pipeline1/runs/1/nodes/", List.class);
+        String testLog = get("/organizations/jenkins/pipelines/pipeline1/runs/1/nodes/"+nodes.get(1).get("id")+"/log/", String.class);
+        Assert.assertFalse(testLog, testLog.contains("Building..."));
+        Assert.assertTrue(testLog, testLog.contains("Unit testing...") && testLog.contains("UI testing..."));
+    }
+
+    @Test
+    public void searchStepLogs() throws Exception {
+        WorkflowJob job1 = j.jenkins.createProject(WorkflowJob.class, "pipeline1");
+        job1.setDefinition(new CpsFlowDefinition("stage ('build') {\n" +
+            "  echo 'Building...'\n" +
+            "}\n" +
+            "stage ('test') {\n" +
+            "  parallel 'unit':{\n" +
+            "    echo 'Unit testing...'\n" +
+            "  },'ui':{\n" +
+            "    echo 'UI testing...'\n" +
+            "  }\n" +
+            "}"));
+        WorkflowRun b1 = job1.scheduleBuild2(0).get();
+        j.assertBuildStatusSuccess(b1);
+
+        String result = get("/organizations/jenkins/pipelines/pipeline1/runs/1/logsearch/?q=testing", String.class);
+        String[] lines = result.trim().split("\n");
+        Assert.assertEquals(result, 2, lines.length);
+        for(String line: lines){
+            Map match = JsonConverter.toJava(line, Map.class);
+            assertNotNull(match.get("step"));
+            Assert.assertEquals(1, match.get("line"));
+            Assert.assertTrue(((String) match.get("text")).endsWith("testing..."));
+        }
+
+        result = get("/organizations/jenkins/pipelines/pipeline1/runs/1/logsearch/?q=testing&limit=1", String.class);
+        Assert.assertEquals(result, 1, result.trim().split("\n").length);
+    }
+
+    @Test
+    public void searchStepLogsOfManySteps() throws Exception {
+        WorkflowJob job1 = j.jenkins.createProject(WorkflowJob.class, "pipeline1");
+        job1.setDefinition(new CpsFlowDefinition("stage ('build') {\n" +
+            "  for (int i = 0; i < " + (LogSearchResource.MAX_QUEUED + 100) + "; i++) {\n" +
+            "    echo \"building ${i}\"\n" +
+            "  }\n" +
+            "}"));
+        WorkflowRun b1 = job1.scheduleBuild2(0).get();
+        j.assertBuildStatusSuccess(b1);
+
+        // more steps than the pool queues are searched by the tasks of the search
+        String result = get("/organizations/jenkins/pipelines/pipeline1/runs/1/logsearch/?q=building%20" + LogSearchResource.MAX_QUEUED + "$", String.class);
+        String[] lines = result.trim().split("\n");
+        Assert.assertEquals(result, 1, lines.length);
+        Assert.assertTrue(lines[0], lines[0].contains("building " + LogSearchResource.MAX_QUEUED));
+    }
+
+    @Test
+    public void searchStepLogsAbortsBacktracking() throws Exception {
+        WorkflowJob job1 = j.jenkins.createProject(WorkflowJob.class, "pipeline1");
+        job1.setDefinition(new CpsFlowDefinition("stage ('build') {\n" +
+            "  echo 'aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa'\n" +
+            "  echo 'Building...'\n" +
+            "}"));
+        WorkflowRun b1 = job1.scheduleBuild2(0).get();
+        j.assertBuildStatusSuccess(b1);
+
+        // backtracks for longer than the test would run, unless the search is aborted
+        long start = System.currentTimeMillis();
+        String result = get("/organizations/jenkins/pipelines/pipeline1/runs/1/logsearch/?q=(a%2B)%2Bb", String.class);
+        Assert.assertEquals("", result.trim());
+        Assert.assertTrue(System.currentTimeMillis() - start < LogSearchResource.MAX_SEARCH_TIME + 30000);
+
+        result = get("/organizations/jenkins/pipelines/pipeline1/runs/1/logsearch/?q=Building", String.class);
+        Assert.assertEquals(result, 1, result.trim().split("\n").length);
+    }
+
     private void setupScm(String script) throws Exception {
         // create git repo
         sampleRepo.init();
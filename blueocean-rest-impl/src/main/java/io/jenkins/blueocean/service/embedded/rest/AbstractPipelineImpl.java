@@ -25,10 +25,12 @@ import io.jenkins.blueocean.rest.model.BlueFavorite;
 import io.jenkins.blueocean.rest.model.BlueFavoriteAction;
 import io.jenkins.blueocean.rest.model.BluePipeline;
 import io.jenkins.blueocean.rest.model.BlueQueueContainer;
+import io.jenkins.blueocean.rest.model.BlueQueueItem;
 import io.jenkins.blueocean.rest.model.BlueRun;
 import io.jenkins.blueocean.rest.model.BlueRunContainer;
 import io.jenkins.blueocean.rest.model.Container;
 import io.jenkins.blueocean.rest.model.Resource;
+import io.jenkins.blueocean.rest.pageable.Cursored;
 import io.jenkins.blueocean.service.embedded.util.FavoriteUtil;
 import org.kohsuke.stapler.Stapler;
 import org.kohsuke.stapler.WebMethod;
@@ -53,6 +55,10 @@ import static io.jenkins.blueocean.rest.model.KnownCapabilities.JENKINS_JOB;
  */
 @Capability(JENKINS_JOB)
 public class AbstractPipelineImpl extends BluePipeline {
+    /** Prefixes of activity cursors, followed by queue id or build number */
+    private static final String QUEUE_CURSOR = "q.";
+    private static final String RUN_CURSOR = "r.";
+
     private final Job job;
 
     protected AbstractPipelineImpl(Job job) {
@@ -94,9 +100,12 @@ public class AbstractPipelineImpl extends BluePipeline {
 
     @Override
     public String getLastSuccessfulRun() {
-        if(job.getLastSuccessfulBuild() != null){
-            String id = job.getLastSuccessfulBuild().getId();
-
+        // run index tells it without loading the build
+        String id = RunSummaryIndex.getLastSuccessfulId(job);
+        if(id == null && job.getLastSuccessfulBuild() != null){
+            id = job.getLastSuccessfulBuild().getId();
+        }
+        if(id != null){
             return Stapler.getCurrentRequest().getRootPath()+getLink().getHref()+"runs/"+id+"/";
         }
         return null;
@@ -210,27 +219,87 @@ public class AbstractPipelineImpl extends BluePipeline {
 
     @Override
     public Container<Resource> getActivities() {
-        return new Container<Resource>(){
-            @Override
-            public Iterator<Resource> iterator() {
-                throw new ServiceException.NotImplementedException("Not implemented");
-            }
+        return new ActivityContainer();
+    }
 
-            @Override
-            public Resource get(String name) {
-                throw new ServiceException.NotImplementedException("Not implemented");
-            }
+    /**
+     * Queued items then runs of the job, newest first.
+     *
+     * Pages taken by cursor resume after the queue id or build number of the last item of the previous page.
+     */
+    private class ActivityContainer extends Container<Resource> implements Cursored<Resource> {
+        @Override
+        public Iterator<Resource> iterator() {
+            throw new ServiceException.NotImplementedException("Not implemented");
+        }
 
-            @Override
-            public Link getLink() {
-                return AbstractPipelineImpl.this.getLink().rel("activities");
+        @Override
+        public Resource get(String name) {
+            throw new ServiceException.NotImplementedException("Not implemented");
+        }
+
+        @Override
+        public Link getLink() {
+            return AbstractPipelineImpl.this.getLink().rel("activities");
+        }
+
+        @Override
+        public Iterator<Resource> iterator(final int start, final int limit) {
+            return activityIterator(getQueue(), getRuns(), start, limit);
+        }
+
+        @Override
+        public Page<Resource> page(@Nullable String cursor, int limit) {
+            List<Resource> items = new ArrayList<>();
+            Iterator<BlueRun> runs;
+            if(cursor == null || cursor.startsWith(QUEUE_CURSOR)){
+                // queue ids grow, items after the cursor are the older ones
+                long before = cursor == null ? Long.MAX_VALUE : parseCursor(cursor, QUEUE_CURSOR, Long.MAX_VALUE);
+                for(BlueQueueItem item: getQueue()){
+                    if(items.size() >= limit){
+                        break;
+                    }
+                    if(Long.parseLong(item.getId()) < before){
+                        items.add(item);
+                    }
+                }
+                runs = getRuns().iterator();
+            }else if(cursor.startsWith(RUN_CURSOR)){
+                runs = RunSearch.findRunsBefore(job, AbstractPipelineImpl.this.getLink(),
+                    (int) parseCursor(cursor, RUN_CURSOR, Integer.MAX_VALUE)).iterator();
+            }else{
+                throw new ServiceException.BadRequestExpception("Invalid cursor: " + cursor);
+            }
+            while(items.size() < limit && runs.hasNext()){
+                items.add(runs.next());
             }
 
-            @Override
-            public Iterator<Resource> iterator(final int start, final int limit) {
-                return activityIterator(getQueue(), getRuns(), start, limit);
+            String next = null;
+            if(limit > 0 && items.size() >= limit){
+                Resource last = items.get(items.size() - 1);
+                next = last instanceof BlueQueueItem
+                    ? QUEUE_CURSOR + ((BlueQueueItem) last).getId()
+                    : RUN_CURSOR + ((BlueRun) last).getId();
             }
-        };
+            return new Page<>(items, next);
+        }
+    }
+
+    /** Number following given prefix of given cursor, which is from 0 to given maximum */
+    private static long parseCursor(String cursor, String prefix, long max){
+        if(!cursor.startsWith(prefix)){
+            throw new ServiceException.BadRequestExpception("Invalid cursor: " + cursor);
+        }
+        long n;
+        try {
+            n = Long.parseLong(cursor.substring(prefix.length()));
+        } catch (NumberFormatException e) {
+            throw new ServiceException.BadRequestExpception("Invalid cursor: " + cursor);
+        }
+        if(n < 0 || n > max){
+            throw new ServiceException.BadRequestExpception("Invalid cursor: " + cursor);
+        }
+        return n;
     }
 
     @Override
@@ -1,5 +1,7 @@
 package io.jenkins.blueocean.service.embedded.rest;
 
+import com.google.common.base.Supplier;
+import hudson.console.AnnotatedLargeText;
 import hudson.model.Action;
 import hudson.model.Result;
 import hudson.model.Run;
@@ -123,7 +125,12 @@ public class AbstractRunImpl<T extends Run> extends BlueRun {
 
     @Override
     public Object getLog() {
-        return new LogResource(run.getLogText());
+        return new LogResource(new Supplier<AnnotatedLargeText>() {
+            @Override
+            public AnnotatedLargeText get() {
+                return run.getLogText();
+            }
+        }, run.getLogFile());
     }
 
     @Override
@@ -1,24 +1,36 @@
 package io.jenkins.blueocean.service.embedded.rest;
 
 import com.google.common.base.Function;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterators;
-import com.google.common.util.concurrent.Service;
+import com.google.common.collect.Lists;
 import hudson.model.Run;
 import io.jenkins.blueocean.commons.ServiceException;
 import io.jenkins.blueocean.rest.Reachable;
 import io.jenkins.blueocean.rest.hal.Link;
 import io.jenkins.blueocean.rest.model.BlueArtifact;
 import io.jenkins.blueocean.rest.model.BlueArtifactContainer;
-import io.jenkins.blueocean.rest.model.Resource;
+import io.jenkins.blueocean.rest.pageable.Cursored;
+import io.jenkins.blueocean.rest.pageable.Pageables;
+import io.jenkins.blueocean.rest.pageable.Totaled;
 import jenkins.util.VirtualFile;
 import org.kohsuke.stapler.Stapler;
 
 import javax.annotation.Nullable;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
-
-public class ArtifactContainerImpl extends BlueArtifactContainer {
+import java.util.Map;
+
+/**
+ * Artifacts of a run, in the order of their paths compared segment by segment.
+ *
+ * Artifacts are walked from the artifact store as they're iterated, and for completed runs listed from their
+ * {@link ArtifactManifest} instead. Pages taken by cursor resume after the path of the last artifact of the previous
+ * page, without walking the artifacts before it.
+ */
+public class ArtifactContainerImpl extends BlueArtifactContainer implements Cursored<BlueArtifact>, Totaled {
     final private Run run;
     final private Link self;
     public ArtifactContainerImpl(Run r, Reachable parent) {
@@ -75,37 +87,63 @@ public class ArtifactContainerImpl extends BlueArtifactContainer {
         };
     }
 
+    /**
+     * Zip of selected artifacts, see {@link ArtifactZipResource}
+     */
+    public ArtifactZipResource getZip() {
+        return new ArtifactZipResource(run, this);
+    }
+
     @Override
     public Iterator<BlueArtifact> iterator(int start, int limit) {
-        List<Run.Artifact> artifactsUpTo = run.getArtifactsUpTo(limit);
+        return toBlueArtifacts(Pageables.slice(artifacts(null), start, limit));
+    }
 
-        // If start exceeds number of artifacts return an emtpy one.
-        if(start >= artifactsUpTo.size()) {
-            return Iterators.emptyIterator();
-        }
+    @Override
+    public Iterator<BlueArtifact> iterator() {
+        return toBlueArtifacts(artifacts(null));
+    }
 
-        int calculatedLimit = limit;
+    /**
+     * Artifacts after the one whose path is given cursor.
+     */
+    @Override
+    public Page<BlueArtifact> page(@Nullable String cursor, int limit) {
+        List<BlueArtifact> items = Lists.newArrayList(toBlueArtifacts(Iterators.limit(artifacts(cursor), limit)));
+        String next = null;
+        if(limit > 0 && items.size() >= limit){
+            next = items.get(items.size() - 1).getPath();
+        }
+        return new Page<>(items, next);
+    }
 
-        if(calculatedLimit > artifactsUpTo.size()) {
-            calculatedLimit = artifactsUpTo.size();
+    /**
+     * Number and size of all the artifacts, known once the manifest of a completed run is written.
+     */
+    @Override
+    public Map<String, Long> getTotals() {
+        ArtifactManifest manifest = ArtifactManifest.get(run);
+        if(manifest == null){
+            return Collections.emptyMap();
         }
+        return ImmutableMap.of("Count", (long) manifest.getArtifacts().size(), "Size", manifest.getTotalSize());
+    }
 
-        List<Run.Artifact> artifacts = artifactsUpTo.subList(start, calculatedLimit);
+    /** Artifacts after given path, from the manifest of a completed run, walked from the artifact store otherwise */
+    Iterator<ArtifactManifest.Artifact> artifacts(@Nullable String after){
+        ArtifactManifest manifest = ArtifactManifest.get(run);
+        if(manifest != null){
+            return manifest.after(after).iterator();
+        }
+        return ArtifactManifest.walk(run, after);
+    }
 
-        return Iterators.transform(artifacts.iterator(), new Function<Run.Artifact, BlueArtifact>() {
+    private Iterator<BlueArtifact> toBlueArtifacts(Iterator<ArtifactManifest.Artifact> artifacts){
+        return Iterators.transform(artifacts, new Function<ArtifactManifest.Artifact, BlueArtifact>() {
             @Override
-            public BlueArtifact apply(@Nullable Run.Artifact artifact) {
-                if(artifact == null) {
-                    return null;
-                }
-
+            public BlueArtifact apply(ArtifactManifest.Artifact artifact) {
                 return new ArtifactImpl(run, artifact, ArtifactContainerImpl.this);
             }
         });
     }
-
-    @Override
-    public Iterator<BlueArtifact> iterator() {
-        throw new ServiceException.NotImplementedException("Not implemented");
-    }
 }
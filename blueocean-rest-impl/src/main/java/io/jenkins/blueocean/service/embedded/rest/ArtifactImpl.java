@@ -1,38 +1,68 @@
 package io.jenkins.blueocean.service.embedded.rest;
 
+import hudson.Util;
 import hudson.model.Run;
 import io.jenkins.blueocean.rest.Reachable;
 import io.jenkins.blueocean.rest.hal.Link;
 import io.jenkins.blueocean.rest.model.BlueArtifact;
-import org.kohsuke.stapler.Stapler;
 
 public class ArtifactImpl extends BlueArtifact {
     final private Run run;
-    final private Run.Artifact artifact;
+    final private String name;
+    final private String path;
+    final private String href;
+    final private long size;
     final private Link self;
+
+    /**
+     * @deprecated artifacts are listed from {@link ArtifactManifest}, use
+     * {@link #ArtifactImpl(Run, ArtifactManifest.Artifact, Reachable)}
+     */
+    @Deprecated
     public ArtifactImpl(Run run, Run.Artifact artifact, Reachable parent) {
+        this(run, artifact.getFileName(), artifact.relativePath, artifact.getHref(), getFileSize(artifact), parent);
+    }
+
+    public ArtifactImpl(Run run, ArtifactManifest.Artifact artifact, Reachable parent) {
+        this(run, artifact.getPath().substring(artifact.getPath().lastIndexOf('/') + 1), artifact.getPath(),
+            encodePath(artifact.getPath()), artifact.getSize(), parent);
+    }
+
+    private ArtifactImpl(Run run, String name, String path, String href, long size, Reachable parent) {
         this.run = run;
-        this.artifact = artifact;
+        this.name = name;
+        this.path = path;
+        this.href = href;
+        this.size = size;
         this.self = parent.getLink().rel(this.getPath());
-
     }
+
     @Override
     public String getName() {
-        return artifact.getFileName();
+        return name;
     }
 
     @Override
     public String getPath() {
-        return artifact.relativePath;
+        return path;
     }
 
     @Override
     public String getUrl() {
-        return "/" + run.getUrl()+"artifact/"+ artifact.getHref();
+        return "/" + run.getUrl()+"artifact/"+ href;
     }
 
     @Override
     public long getSize() {
+        return size;
+    }
+
+    @Override
+    public Link getLink() {
+        return self;
+    }
+
+    private static long getFileSize(Run.Artifact artifact){
         try {
             return artifact.getFileSize();
         } catch (NumberFormatException e) {
@@ -40,8 +70,14 @@ public class ArtifactImpl extends BlueArtifact {
         }
     }
 
-    @Override
-    public Link getLink() {
-        return self;
+    private static String encodePath(String path){
+        StringBuilder href = new StringBuilder();
+        for(String segment: path.split("/")){
+            if(href.length() > 0){
+                href.append('/');
+            }
+            href.append(Util.rawEncode(segment));
+        }
+        return href.toString();
     }
 }
@@ -0,0 +1,421 @@
+package io.jenkins.blueocean.service.embedded.rest;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import hudson.Extension;
+import hudson.model.Run;
+import hudson.model.listeners.RunListener;
+import io.jenkins.blueocean.commons.ServiceException;
+import jenkins.util.Timer;
+import jenkins.util.VirtualFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Paths and sizes of the artifacts of a completed run, kept in the run's directory so that they can be listed without
+ * walking the artifact store, which may be remote, again.
+ *
+ * Artifacts are in the order of a depth first walk of the artifact tree with children sorted by name, which is the
+ * order of their paths compared segment by segment, see {@link #PATH_ORDER}. It's written off the request thread,
+ * once the run is finalized, or after the first listing of a completed run that doesn't have it yet, which walks the
+ * artifacts page by page meanwhile.
+ *
+ * Manifest records the latest modification time in the run's artifacts directory, its nested directories and files
+ * included, and is written again when it changed, as when artifacts are archived again or deleted. That's checked off
+ * the request thread too, when a manifest is read and then every {@link #CHECK_INTERVAL}, so a listing may be behind
+ * the artifacts until then. Artifacts kept elsewhere than the artifacts directory are only checked against
+ * {@link Run#getHasArtifacts()}.
+ */
+public final class ArtifactManifest {
+    static final String FILE_NAME = "blueocean-artifacts.manifest";
+
+    private static final int MAGIC = 0x424f414d; // BOAM
+    private static final int FORMAT_VERSION = 2;
+
+    private static final ArtifactManifest EMPTY = new ArtifactManifest(Collections.<Artifact>emptyList(), 0);
+
+    /** Milliseconds a manifest is used before it's checked again against the artifacts */
+    static final long CHECK_INTERVAL = Long.getLong("BLUEOCEAN_ARTIFACT_MANIFEST_CHECK_INTERVAL", 60000);
+
+    /** Number of artifacts of the manifests kept in memory, for all runs */
+    static final int CACHE_SIZE = Integer.getInteger("BLUEOCEAN_ARTIFACT_MANIFEST_CACHE_SIZE", 100000);
+
+    private static final Logger logger = LoggerFactory.getLogger(ArtifactManifest.class);
+
+    /** Manifests read, keyed by path of their file */
+    private static final Cache<String, ArtifactManifest> manifests = CacheBuilder.newBuilder()
+        .maximumWeight(CACHE_SIZE)
+        .weigher(new Weigher<String, ArtifactManifest>() {
+            @Override
+            public int weigh(String key, ArtifactManifest manifest) {
+                return Math.max(1, manifest.artifacts.size());
+            }
+        })
+        .build();
+
+    /** Runs whose manifest is being checked or written */
+    private static final Set<String> pending = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /** Orders artifact paths segment by segment, so that a directory's artifacts are together */
+    static final Comparator<String> PATH_ORDER = new Comparator<String>() {
+        @Override
+        public int compare(String p1, String p2) {
+            String[] s1 = p1.split("/");
+            String[] s2 = p2.split("/");
+            for(int i = 0; i < s1.length && i < s2.length; i++){
+                int c = s1[i].compareTo(s2[i]);
+                if(c != 0){
+                    return c;
+                }
+            }
+            return s1.length - s2.length;
+        }
+    };
+
+    private static final Comparator<VirtualFile> NAME_ORDER = new Comparator<VirtualFile>() {
+        @Override
+        public int compare(VirtualFile f1, VirtualFile f2) {
+            return f1.getName().compareTo(f2.getName());
+        }
+    };
+
+    private final List<Artifact> artifacts;
+    private final long totalSize;
+    /** Latest modification time in the artifacts directory the manifest was written from */
+    private final long stamp;
+    /** When the manifest was last checked against the artifacts, 0 if it wasn't yet */
+    private volatile long checked;
+
+    private ArtifactManifest(List<Artifact> artifacts, long stamp) {
+        this.artifacts = artifacts;
+        this.stamp = stamp;
+        long size = 0;
+        for(Artifact artifact: artifacts){
+            size += artifact.size;
+        }
+        this.totalSize = size;
+    }
+
+    /** Path and size of an artifact */
+    public static final class Artifact {
+        private final String path;
+        private final long size;
+
+        Artifact(String path, long size) {
+            this.path = path;
+            this.size = size;
+        }
+
+        /** Path relative to the artifacts root, segments separated by '/' */
+        public String getPath() {
+            return path;
+        }
+
+        public long getSize() {
+            return size;
+        }
+    }
+
+    public List<Artifact> getArtifacts() {
+        return artifacts;
+    }
+
+    public long getTotalSize() {
+        return totalSize;
+    }
+
+    /**
+     * Artifacts after given path, in {@link #PATH_ORDER}.
+     *
+     * @param after path of an artifact, null to start from the first one
+     */
+    public List<Artifact> after(@CheckForNull String after){
+        if(after == null){
+            return artifacts;
+        }
+        int low = 0;
+        int high = artifacts.size();
+        while(low < high){
+            int mid = (low + high) >>> 1;
+            if(PATH_ORDER.compare(artifacts.get(mid).path, after) <= 0){
+                low = mid + 1;
+            }else{
+                high = mid;
+            }
+        }
+        return artifacts.subList(low, artifacts.size());
+    }
+
+    /**
+     * Gives manifest of given run, as it was last written. It's scheduled to be written if it isn't there yet, and to
+     * be checked against the artifacts if it wasn't lately.
+     *
+     * @return null if the run is still building, its artifacts may still change, or the manifest isn't written yet
+     */
+    public static @CheckForNull ArtifactManifest get(@Nonnull Run<?,?> run){
+        if(run.isBuilding()){
+            return null;
+        }
+        File file = getFile(run);
+        String key = file.getAbsolutePath();
+        if(!run.getHasArtifacts()){
+            manifests.invalidate(key);
+            if(file.isFile() && !file.delete()){
+                logger.warn("Failed to delete "+file);
+            }
+            return EMPTY;
+        }
+        ArtifactManifest manifest = manifests.getIfPresent(key);
+        if(manifest == null){
+            manifest = readIfPresent(file);
+            if(manifest != null){
+                manifests.put(key, manifest);
+            }
+        }
+        if(manifest == null || System.currentTimeMillis() - manifest.checked >= CHECK_INTERVAL){
+            schedule(run);
+        }
+        return manifest;
+    }
+
+    /** Writes manifest of given run again if its artifacts changed since it was written, or if it isn't there */
+    private static void refresh(Run<?,?> run){
+        if(run.isBuilding() || !run.getHasArtifacts()){
+            return;
+        }
+        File file = getFile(run);
+        String key = file.getAbsolutePath();
+        try {
+            long stamp = getStamp(run);
+            ArtifactManifest manifest = manifests.getIfPresent(key);
+            if(manifest == null){
+                manifest = readIfPresent(file);
+            }
+            if(manifest == null || manifest.stamp != stamp){
+                manifest = write(run, file, stamp);
+            }
+            manifest.checked = System.currentTimeMillis();
+            manifests.put(key, manifest);
+        } catch (IOException | RuntimeException e) {
+            logger.warn(String.format("Failed to write artifact manifest %s: %s", file, e.getMessage()), e);
+        }
+    }
+
+    private static @CheckForNull ArtifactManifest readIfPresent(File file){
+        if(!file.isFile()){
+            return null;
+        }
+        try {
+            return read(file);
+        } catch (IOException e) {
+            logger.warn(String.format("Rewriting unreadable artifact manifest %s: %s", file, e.getMessage()));
+            return null;
+        }
+    }
+
+    /**
+     * Walks artifacts of given run, in {@link #PATH_ORDER}, directories are listed only as the walk reaches them.
+     *
+     * @param after path of an artifact, the walk starts after it without listing the directories before it, null to
+     *              start from the first artifact
+     */
+    public static Iterator<Artifact> walk(@Nonnull Run<?,?> run, @CheckForNull String after){
+        return new Walk(run.getArtifactManager().root(), after);
+    }
+
+    static File getFile(Run<?,?> run){
+        return new File(run.getRootDir(), FILE_NAME);
+    }
+
+    /**
+     * Latest modification time of the artifacts directory of given run and of the directories and files in it, so
+     * that artifacts archived, replaced or deleted anywhere in it change it. 0 if its artifacts are kept elsewhere.
+     */
+    private static long getStamp(Run<?,?> run) throws IOException {
+        File dir = run.getArtifactsDir();
+        if(!dir.isDirectory()){
+            return 0;
+        }
+        final long[] latest = {0};
+        Files.walkFileTree(dir.toPath(), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                latest[0] = Math.max(latest[0], attrs.lastModifiedTime().toMillis());
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                latest[0] = Math.max(latest[0], attrs.lastModifiedTime().toMillis());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return latest[0];
+    }
+
+    private static ArtifactManifest read(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if(in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION){
+                throw new IOException("Unknown format");
+            }
+            long stamp = in.readLong();
+            int count = in.readInt();
+            List<Artifact> artifacts = new ArrayList<>(count);
+            for(int i = 0; i < count; i++){
+                artifacts.add(new Artifact(in.readUTF(), in.readLong()));
+            }
+            return new ArtifactManifest(ImmutableList.copyOf(artifacts), stamp);
+        }
+    }
+
+    private static ArtifactManifest write(Run<?,?> run, File file, long stamp) throws IOException {
+        List<Artifact> artifacts = new ArrayList<>();
+        for(Iterator<Artifact> it = walk(run, null); it.hasNext(); ){
+            artifacts.add(it.next());
+        }
+        // listings may write it at the same time as the run listener
+        File tmp = File.createTempFile(FILE_NAME, ".tmp", file.getParentFile());
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeLong(stamp);
+                out.writeInt(artifacts.size());
+                for(Artifact artifact: artifacts){
+                    out.writeUTF(artifact.path);
+                    out.writeLong(artifact.size);
+                }
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            if(tmp.exists() && !tmp.delete()){
+                logger.warn("Failed to delete "+tmp);
+            }
+        }
+        return new ArtifactManifest(ImmutableList.copyOf(artifacts), stamp);
+    }
+
+    /** Schedules manifest of given run to be checked and written if needed, unless it already is */
+    private static void schedule(final Run<?,?> run){
+        final String key = getFile(run).getAbsolutePath();
+        if(!run.getHasArtifacts() || !pending.add(key)){
+            return;
+        }
+        Timer.get().submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    refresh(run);
+                } finally {
+                    pending.remove(key);
+                }
+            }
+        });
+    }
+
+    /** Depth first walk of an artifact tree, each directory is listed when the walk enters it */
+    private static final class Walk extends AbstractIterator<Artifact> {
+        private final Deque<Directory> stack = new ArrayDeque<>();
+
+        /** Segments of the path the walk starts after */
+        private final String[] after;
+
+        private Walk(VirtualFile root, @CheckForNull String after) {
+            this.after = after == null ? null : after.split("/");
+            stack.push(new Directory(root, "", after != null, 0));
+        }
+
+        @Override
+        protected Artifact computeNext() {
+            try {
+                while(!stack.isEmpty()){
+                    Directory dir = stack.peek();
+                    if(dir.next >= dir.children.length){
+                        stack.pop();
+                        continue;
+                    }
+                    VirtualFile child = dir.children[dir.next++];
+                    String path = dir.path + child.getName();
+                    boolean onBound = false;
+                    if(dir.onBound && dir.depth < after.length){
+                        int c = child.getName().compareTo(after[dir.depth]);
+                        if(c < 0 || c == 0 && dir.depth == after.length - 1){
+                            continue; // before the start of the walk, or where it starts
+                        }
+                        onBound = c == 0;
+                    }
+                    if(child.isDirectory()){
+                        stack.push(new Directory(child, path + "/", onBound, dir.depth + 1));
+                    }else if(child.isFile() && !onBound){
+                        return new Artifact(path, child.length());
+                    }
+                }
+            } catch (IOException e) {
+                throw new ServiceException.UnexpectedErrorException("Failed to list artifacts: " + e.getMessage(), e);
+            }
+            return endOfData();
+        }
+
+        /** Directory being walked, at its next child */
+        private static final class Directory {
+            private final VirtualFile[] children;
+            private final String path;
+            /** Whether the directory is on the path the walk starts after, its children before it are skipped */
+            private final boolean onBound;
+            private final int depth;
+            private int next;
+
+            private Directory(VirtualFile dir, String path, boolean onBound, int depth) {
+                VirtualFile[] children;
+                try {
+                    children = dir.list();
+                } catch (IOException e) {
+                    throw new ServiceException.UnexpectedErrorException("Failed to list artifacts in " + dir + ": " + e.getMessage(), e);
+                }
+                Arrays.sort(children, NAME_ORDER);
+                this.children = children;
+                this.path = path;
+                this.onBound = onBound;
+                this.depth = depth;
+            }
+        }
+    }
+
+    @Extension
+    public static class RunListenerImpl extends RunListener<Run<?,?>> {
+        @Override
+        public void onFinalized(Run<?,?> run) {
+            schedule(run);
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package io.jenkins.blueocean.service.embedded.rest;
+
+import com.google.common.collect.ImmutableSet;
+import hudson.Functions;
+import hudson.model.Run;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import io.jenkins.blueocean.commons.ServiceException;
+import jenkins.util.VirtualFile;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Zip of artifacts of a run, streamed as it's written, <code>?path=</code> for each artifact to include or
+ * <code>?glob=</code> for artifacts whose path matches an Ant style pattern, all artifacts if neither is given.
+ *
+ * Artifacts are read on a separate thread, a few buffers ahead of the request thread compressing them, so that reading
+ * from the artifact store and compressing overlap. Artifacts that are compressed already are written without
+ * compression. Reading threads are shared by all zips, at most {@link #THREADS} of them, a zip asked for while they're
+ * all busy isn't queued, it's answered with 503.
+ *
+ * @see ArtifactContainerImpl#getZip()
+ */
+public class ArtifactZipResource {
+    /** Extensions of files that are compressed already */
+    static final Set<String> COMPRESSED = ImmutableSet.of("zip", "jar", "war", "ear", "hpi", "jpi", "apk", "gz",
+        "tgz", "bz2", "xz", "7z", "png", "jpg", "jpeg", "gif");
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** Number of buffers read ahead of the compression */
+    private static final int READ_AHEAD = 16;
+
+    /** Number of threads reading artifacts, for all zips, that is number of zips written at the same time */
+    static final int THREADS = Integer.getInteger("BLUEOCEAN_ARTIFACT_ZIP_THREADS", 4);
+
+    private static final ExecutorService executor = createExecutor();
+
+    private final Run run;
+    private final ArtifactContainerImpl artifacts;
+
+    public ArtifactZipResource(Run run, ArtifactContainerImpl artifacts) {
+        this.run = run;
+        this.artifacts = artifacts;
+    }
+
+    public void doIndex(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        if(Functions.isArtifactsPermissionEnabled()){
+            run.checkPermission(Run.ARTIFACTS);
+        }
+        String[] paths = req.getParameterValues("path");
+        String glob = req.getParameter("glob");
+        final Set<String> selected = paths == null ? Collections.<String>emptySet() : new HashSet<>(Arrays.asList(paths));
+        final Pattern pattern = glob == null ? null : toPattern(glob);
+        final boolean all = selected.isEmpty() && pattern == null;
+
+        final Iterator<ArtifactManifest.Artifact> it = artifacts.artifacts(null);
+        final VirtualFile root = run.getArtifactManager().root();
+        final Reader reader = new Reader();
+        Future<?> future;
+        try {
+            future = executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    reader.read(root, it, selected, pattern, all);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            throw new ServiceException.ServiceUnavailableException("Too many artifact zips, try again later", e);
+        }
+
+        // zip is started with its first entry, a zip that fails is left without its central directory
+        ZipOutputStream zip = null;
+        try {
+            Chunk chunk;
+            while((chunk = reader.take()) != Chunk.END){
+                if(chunk.entry != null){
+                    if(zip == null){
+                        rsp.setContentType("application/zip");
+                        rsp.setHeader("Content-Disposition", "attachment; filename=\""
+                            + run.getParent().getName().replace('"', '_') + '-' + run.getId() + "-artifacts.zip\"");
+                        zip = new ZipOutputStream(rsp.getOutputStream());
+                    }
+                    zip.setLevel(isCompressed(chunk.entry) ? Deflater.NO_COMPRESSION : Deflater.BEST_SPEED);
+                    zip.putNextEntry(new ZipEntry(chunk.entry));
+                }else{
+                    zip.write(chunk.data, 0, chunk.length);
+                }
+            }
+            if(reader.error != null){
+                throw reader.error;
+            }
+            if(zip == null){
+                throw new ServiceException.NotFoundException("No artifacts to zip in " + run.getFullDisplayName());
+            }
+            zip.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            reader.cancelled = true;
+            future.cancel(true);
+        }
+    }
+
+    private static ExecutorService createExecutor(){
+        // no queue, a zip waiting for a thread would hold its request thread
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(THREADS, THREADS, 10L, TimeUnit.SECONDS,
+            new SynchronousQueue<Runnable>(),
+            new NamingThreadFactory(new DaemonThreadFactory(), "Blue Ocean artifact zip"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    static boolean isCompressed(String path){
+        int dot = path.lastIndexOf('.');
+        return dot > path.lastIndexOf('/') && COMPRESSED.contains(path.substring(dot + 1).toLowerCase());
+    }
+
+    /** Regular expression of an Ant style pattern, where ** matches any number of directories */
+    static Pattern toPattern(String glob){
+        StringBuilder regex = new StringBuilder();
+        for(int i = 0; i < glob.length(); i++){
+            char c = glob.charAt(i);
+            if(c == '*'){
+                if(i + 1 < glob.length() && glob.charAt(i + 1) == '*'){
+                    i++;
+                    if(i + 1 < glob.length() && glob.charAt(i + 1) == '/'){
+                        i++;
+                        regex.append("(?:.*/)?");
+                    }else{
+                        regex.append(".*");
+                    }
+                }else{
+                    regex.append("[^/]*");
+                }
+            }else if(c == '?'){
+                regex.append("[^/]");
+            }else{
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    /** Part of the zip read ahead, the start of an entry or data of the current entry */
+    private static final class Chunk {
+        private static final Chunk END = new Chunk(null, null, 0);
+
+        private final String entry;
+        private final byte[] data;
+        private final int length;
+
+        private Chunk(String entry, byte[] data, int length) {
+            this.entry = entry;
+            this.data = data;
+            this.length = length;
+        }
+    }
+
+    /** Reads selected artifacts into a bounded queue, ending it with {@link Chunk#END} */
+    private static final class Reader {
+        private final BlockingQueue<Chunk> chunks = new ArrayBlockingQueue<>(READ_AHEAD);
+        private volatile boolean cancelled;
+        private volatile IOException error;
+
+        private void read(VirtualFile root, Iterator<ArtifactManifest.Artifact> artifacts, Set<String> selected,
+                          Pattern pattern, boolean all){
+            try {
+                while(!cancelled && artifacts.hasNext()){
+                    String path = artifacts.next().getPath();
+                    if(!all && !selected.contains(path) && (pattern == null || !pattern.matcher(path).matches())){
+                        continue;
+                    }
+                    put(new Chunk(path, null, 0));
+                    try (InputStream in = root.child(path).open()) {
+                        while(true){
+                            byte[] buffer = new byte[BUFFER_SIZE];
+                            int n = in.read(buffer);
+                            if(n < 0){
+                                break;
+                            }
+                            put(new Chunk(null, buffer, n));
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                error = e;
+            } catch (RuntimeException e) {
+                error = new IOException(e.getMessage(), e);
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                put(Chunk.END);
+            } catch (InterruptedException e) {
+                // the request is gone
+            }
+        }
+
+        private void put(Chunk chunk) throws InterruptedException {
+            while(!cancelled){
+                if(chunks.offer(chunk, 1, TimeUnit.SECONDS)){
+                    return;
+                }
+            }
+            throw new InterruptedException();
+        }
+
+        private Chunk take() throws InterruptedException {
+            return chunks.take();
+        }
+    }
+}
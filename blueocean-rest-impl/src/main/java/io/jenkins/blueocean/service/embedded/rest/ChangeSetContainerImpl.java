@@ -0,0 +1,306 @@
+package io.jenkins.blueocean.service.embedded.rest;
+
+import com.google.common.base.Function;
+import com.google.common.base.Predicate;
+import com.google.common.base.Supplier;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Iterators;
+import hudson.Util;
+import hudson.model.Run;
+import hudson.model.User;
+import hudson.scm.ChangeLogSet;
+import hudson.scm.ChangeLogSet.Entry;
+import io.jenkins.blueocean.commons.ServiceException;
+import io.jenkins.blueocean.rest.Reachable;
+import io.jenkins.blueocean.rest.hal.Link;
+import io.jenkins.blueocean.rest.ApiHead;
+import io.jenkins.blueocean.rest.model.BlueChangeSetEntry;
+import io.jenkins.blueocean.rest.model.BlueFavoriteContainer;
+import io.jenkins.blueocean.rest.model.BlueUser;
+import io.jenkins.blueocean.rest.model.Container;
+import io.jenkins.blueocean.rest.pageable.ETagged;
+import io.jenkins.blueocean.rest.pageable.Pageables;
+import jenkins.model.Jenkins;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Change set of a run, whose entries are made into {@link ChangeSetResource}s only for the page asked for. Entries
+ * with the same commit id, as when a repository is checked out more than once, are given once, where the first of
+ * them is.
+ *
+ * Authors of the entries of a page are resolved together, once for each author, so that entries by the same author
+ * share one {@link BlueUser}. Pages of a completed run are kept as the values of their entries, so that its change
+ * logs aren't read again for them, with the ids of their authors, which are looked up without creating users that
+ * don't exist. Whole change set, as inlined in the run, isn't kept.
+ */
+public class ChangeSetContainerImpl extends Container<BlueChangeSetEntry> implements ETagged {
+    /** Number of entries of the cached pages, for all runs */
+    static final int CACHE_SIZE = Integer.getInteger("BLUEOCEAN_CHANGESET_CACHE_SIZE", 10000);
+
+    private static final Cache<String, List<EntryValue>> pages = CacheBuilder.newBuilder()
+        .maximumWeight(CACHE_SIZE)
+        .weigher(new Weigher<String, List<EntryValue>>() {
+            @Override
+            public int weigh(String key, List<EntryValue> page) {
+                return Math.max(1, page.size());
+            }
+        })
+        .build();
+
+    private final Run run;
+    private final Reachable parent;
+    private final Supplier<? extends Iterable<? extends ChangeLogSet<? extends Entry>>> changeLogs;
+
+    /**
+     * @param changeLogs change logs of the run, only read when entries of a page not cached are asked for
+     */
+    public ChangeSetContainerImpl(Run run, Reachable parent,
+                                  Supplier<? extends Iterable<? extends ChangeLogSet<? extends Entry>>> changeLogs) {
+        this.run = run;
+        this.parent = parent;
+        this.changeLogs = changeLogs;
+    }
+
+    @Override
+    public Link getLink() {
+        return parent.getLink().rel("changeSet");
+    }
+
+    /**
+     * @param name commit id of the entry, or its position in the change set starting at 1 if the entry has no commit
+     *             id
+     */
+    @Override
+    public BlueChangeSetEntry get(String name) {
+        int count = 0;
+        for(Iterator<Entry> it = allEntries(); it.hasNext(); ){
+            Entry e = it.next();
+            count++;
+            String id = e.getCommitId();
+            if(id == null){
+                id = String.valueOf(count);
+            }
+            if(id.equals(name)){
+                return new ChangeSetResource(e, parent);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Iterator<BlueChangeSetEntry> iterator() {
+        return Iterators.transform(entries(), new Function<Entry, BlueChangeSetEntry>() {
+            @Override
+            public BlueChangeSetEntry apply(Entry e) {
+                return new ChangeSetResource(e, parent);
+            }
+        });
+    }
+
+    @Override
+    public Iterator<BlueChangeSetEntry> iterator(final int start, final int limit) {
+        if(run.isBuilding()){
+            final Map<User, BlueUser> authors = new HashMap<>();
+            return Iterators.transform(Pageables.slice(entries(), start, limit), new Function<Entry, BlueChangeSetEntry>() {
+                @Override
+                public BlueChangeSetEntry apply(Entry e) {
+                    User author = e.getAuthor();
+                    BlueUser user = authors.get(author);
+                    if(user == null){
+                        user = new UserImpl(author);
+                        authors.put(author, user);
+                    }
+                    return new ChangeSetResource(e, user, parent);
+                }
+            });
+        }
+        List<EntryValue> page;
+        try {
+            page = pages.get(run.getExternalizableId() + ':' + start + ':' + limit, new Callable<List<EntryValue>>() {
+                @Override
+                public List<EntryValue> call() {
+                    List<EntryValue> page = new ArrayList<>();
+                    for(Iterator<Entry> it = Pageables.slice(entries(), start, limit); it.hasNext(); ){
+                        page.add(new EntryValue(it.next()));
+                    }
+                    return ImmutableList.copyOf(page);
+                }
+            });
+        } catch (ExecutionException e) {
+            throw new ServiceException.UnexpectedErrorException("Failed to read change set of " + run, e.getCause());
+        }
+        final Map<String, BlueUser> authors = new HashMap<>();
+        return Iterators.transform(page.iterator(), new Function<EntryValue, BlueChangeSetEntry>() {
+            @Override
+            public BlueChangeSetEntry apply(EntryValue value) {
+                BlueUser author = authors.get(value.authorId);
+                if(author == null){
+                    author = getAuthor(value.authorId);
+                    authors.put(value.authorId, author);
+                }
+                return new CachedEntry(value, author, parent);
+            }
+        });
+    }
+
+    /** Author of given id, a user that doesn't exist is given by its id and isn't created */
+    private static BlueUser getAuthor(String id){
+        User user = User.getById(id, false);
+        return user != null ? new UserImpl(user) : new AuthorId(id);
+    }
+
+    @Override
+    public String getETag() {
+        if(run.isBuilding()){
+            return null;
+        }
+        return '"' + Util.getDigestOf(Jenkins.SESSION_HASH + ':' + run.getExternalizableId() + ':'
+            + run.getTimeInMillis() + ":changeSet") + '"';
+    }
+
+    /** Entries of the change logs, without those whose commit id was given already */
+    private Iterator<Entry> entries(){
+        final Set<String> seen = new HashSet<>();
+        return Iterators.filter(allEntries(), new Predicate<Entry>() {
+            @Override
+            public boolean apply(Entry e) {
+                String id = e.getCommitId();
+                return id == null || seen.add(id);
+            }
+        });
+    }
+
+    private Iterator<Entry> allEntries(){
+        return Iterators.concat(Iterables.transform(changeLogs.get(),
+            new Function<ChangeLogSet<? extends Entry>, Iterator<Entry>>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public Iterator<Entry> apply(ChangeLogSet<? extends Entry> changeLog) {
+                    return (Iterator<Entry>) changeLog.iterator();
+                }
+            }).iterator());
+    }
+
+    /** Values of an entry of a completed run, kept instead of the entry, which holds on to its whole change log */
+    private static final class EntryValue {
+        private final String commitId;
+        private final String authorId;
+        private final String timestamp;
+        private final String msg;
+        private final List<String> affectedPaths;
+        private final String url;
+
+        private EntryValue(Entry e) {
+            this.commitId = e.getCommitId();
+            this.authorId = e.getAuthor().getId();
+            this.timestamp = e.getTimestamp() > 0 ? ChangeSetResource.TIMESTAMP_FORMAT.format(e.getTimestamp()) : null;
+            this.msg = e.getMsg();
+            this.affectedPaths = Collections.unmodifiableList(new ArrayList<>(e.getAffectedPaths()));
+            this.url = ChangeSetResource.getUrl(e);
+        }
+    }
+
+    /** Entry of a cached page, with its author resolved along with those of the other entries of the page */
+    @ExportedBean
+    static final class CachedEntry extends BlueChangeSetEntry {
+        private final EntryValue value;
+        private final BlueUser author;
+        private final Reachable parent;
+
+        private CachedEntry(EntryValue value, BlueUser author, Reachable parent) {
+            this.value = value;
+            this.author = author;
+            this.parent = parent;
+        }
+
+        @Override
+        public String getCommitId() {
+            return value.commitId;
+        }
+
+        @Override
+        public BlueUser getAuthor() {
+            return author;
+        }
+
+        @Override
+        public String getTimestamp() {
+            return value.timestamp;
+        }
+
+        @Override
+        public String getMsg() {
+            return value.msg;
+        }
+
+        @Override
+        public Collection<String> getAffectedPaths() {
+            return value.affectedPaths;
+        }
+
+        @Override
+        public String getUrl() {
+            return value.url;
+        }
+
+        @Override
+        public Link getLink() {
+            return parent.getLink().rel("changeset/"+getCommitId());
+        }
+    }
+
+    /** Author that isn't a user of this Jenkins, given by the id the change log has for it */
+    private static final class AuthorId extends BlueUser {
+        private final String id;
+
+        private AuthorId(String id) {
+            this.id = id;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public String getFullName() {
+            return id;
+        }
+
+        @Override
+        public String getEmail() {
+            return null;
+        }
+
+        @Override
+        public String getAvatar() {
+            return null;
+        }
+
+        @Override
+        public BlueFavoriteContainer getFavorites() {
+            throw new ServiceException.ForbiddenException("You do not have access to this resource.");
+        }
+
+        @Override
+        public Link getLink() {
+            return ApiHead.INSTANCE().getLink().rel("users/" + id);
+        }
+    }
+}
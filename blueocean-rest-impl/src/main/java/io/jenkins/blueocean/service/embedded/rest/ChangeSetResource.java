@@ -8,12 +8,12 @@ import io.jenkins.blueocean.rest.hal.Link;
 import io.jenkins.blueocean.rest.model.BlueChangeSetEntry;
 import io.jenkins.blueocean.rest.model.BlueRun;
 import io.jenkins.blueocean.rest.model.BlueUser;
+import org.apache.commons.lang.time.FastDateFormat;
 import org.kohsuke.stapler.export.Exported;
 import org.kohsuke.stapler.export.ExportedBean;
 
 import java.io.IOException;
 import java.net.URL;
-import java.text.SimpleDateFormat;
 import java.util.Collection;
 
 /**
@@ -27,24 +27,35 @@ import java.util.Collection;
  */
 @ExportedBean
 public class ChangeSetResource extends BlueChangeSetEntry {
+    static final FastDateFormat TIMESTAMP_FORMAT = FastDateFormat.getInstance(BlueRun.DATE_FORMAT_STRING);
+
     private final ChangeLogSet.Entry changeSet;
+    private final BlueUser author;
     private final Reachable parent;
 
     public ChangeSetResource(Entry changeSet, Reachable parent) {
+        this(changeSet, null, parent);
+    }
+
+    /**
+     * @param author author of the change, already resolved, null to resolve it when it's asked for
+     */
+    public ChangeSetResource(Entry changeSet, BlueUser author, Reachable parent) {
         this.changeSet = changeSet;
+        this.author = author;
         this.parent = parent;
     }
 
 
     @Override
     public BlueUser getAuthor() {
-        return new UserImpl(changeSet.getAuthor());
+        return author != null ? author : new UserImpl(changeSet.getAuthor());
     }
 
     @Override
     public String getTimestamp(){
         if(changeSet.getTimestamp() > 0) {
-            return new SimpleDateFormat(BlueRun.DATE_FORMAT_STRING).format(changeSet.getTimestamp());
+            return TIMESTAMP_FORMAT.format(changeSet.getTimestamp());
         }else{
             return null;
         }
@@ -52,6 +63,11 @@ public class ChangeSetResource extends BlueChangeSetEntry {
 
     @Override
     public String getUrl() {
+        return getUrl(changeSet);
+    }
+
+    /** Link to given change in the repository browser of its change log, if it has one */
+    static String getUrl(Entry changeSet) {
         RepositoryBrowser browser = changeSet.getParent().getBrowser();
         if(browser != null) {
             try {
@@ -0,0 +1,108 @@
+package io.jenkins.blueocean.service.embedded.rest;
+
+import hudson.Extension;
+import hudson.Util;
+import hudson.console.AnnotatedLargeText;
+import hudson.model.Run;
+import hudson.model.listeners.RunListener;
+import jenkins.util.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzipped plain text of a completed log file, kept next to the log so that {@link LogResource} can send it as is to
+ * clients accepting gzip instead of compressing the log again for each of them.
+ *
+ * It's written in the background once the run is finalized, or on the first request for a completed log that
+ * doesn't have it yet.
+ */
+public final class CompressedLog {
+    /** Logs up to this size are sent uncompressed, see {@link LogResource} */
+    static final long MIN_SIZE = 4096;
+
+    private static final Logger logger = LoggerFactory.getLogger(CompressedLog.class);
+
+    /** Log files whose compressed text is being written */
+    private static final Set<String> pending = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private CompressedLog() {
+    }
+
+    /**
+     * Compressed text of given log file. It isn't <code>log.gz</code>, Jenkins would take that as the compressed log
+     * itself.
+     */
+    static File getFile(File logFile){
+        return new File(logFile.getPath() + ".plain.gz");
+    }
+
+    /** Whether compressed text of given log file is there and was written after the log */
+    static boolean isAvailable(File logFile){
+        File file = getFile(logFile);
+        return file.isFile() && file.lastModified() >= logFile.lastModified();
+    }
+
+    /** Strong tag of the compressed text of given log file */
+    static String getETag(File logFile){
+        return "\"" + Util.getDigestOf(logFile.getAbsolutePath() + ":" + logFile.length() + ":" + logFile.lastModified()) + "\"";
+    }
+
+    /**
+     * Writes compressed text of given completed log in the background, unless it's already there or being written.
+     */
+    static void schedule(@Nonnull final File logFile, @Nonnull final AnnotatedLargeText logText){
+        if(!logText.isComplete() || logFile.getName().endsWith(".gz") || logFile.length() <= MIN_SIZE
+            || isAvailable(logFile) || !pending.add(logFile.getAbsolutePath())){
+            return;
+        }
+        Timer.get().submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    write(logFile, logText);
+                } finally {
+                    pending.remove(logFile.getAbsolutePath());
+                }
+            }
+        });
+    }
+
+    private static void write(File logFile, AnnotatedLargeText logText){
+        File file = getFile(logFile);
+        File tmp = null;
+        try {
+            // a request may write it at the same time as the run listener, each writes its own temporary file
+            tmp = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+            try (OutputStream out = new GZIPOutputStream(new FileOutputStream(tmp), 64 * 1024)) {
+                logText.writeLogTo(0, out);
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn(String.format("Failed to write compressed log %s: %s", file, e.getMessage()), e);
+        } finally {
+            if(tmp != null && tmp.exists() && !tmp.delete()){
+                logger.warn("Failed to delete "+tmp);
+            }
+        }
+    }
+
+    @Extension
+    public static class RunListenerImpl extends RunListener<Run<?,?>> {
+        @Override
+        public void onFinalized(Run<?,?> run) {
+            schedule(run.getLogFile(), run.getLogText());
+        }
+    }
+}
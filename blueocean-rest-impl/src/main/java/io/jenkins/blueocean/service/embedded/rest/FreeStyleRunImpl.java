@@ -1,20 +1,21 @@
 package io.jenkins.blueocean.service.embedded.rest;
 
+import com.google.common.base.Supplier;
 import hudson.Extension;
 import hudson.model.FreeStyleBuild;
 import hudson.model.Run;
 import hudson.scm.ChangeLogSet;
+import hudson.scm.ChangeLogSet.Entry;
 import io.jenkins.blueocean.rest.Reachable;
 import io.jenkins.blueocean.rest.annotation.Capability;
 import io.jenkins.blueocean.rest.hal.Link;
 import io.jenkins.blueocean.rest.model.BlueChangeSetEntry;
 import io.jenkins.blueocean.rest.model.BlueRun;
 import io.jenkins.blueocean.rest.model.Container;
-import io.jenkins.blueocean.rest.model.Containers;
 import org.kohsuke.stapler.QueryParameter;
 
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.Collections;
+import java.util.List;
 
 import static io.jenkins.blueocean.rest.model.KnownCapabilities.JENKINS_FREE_STYLE_BUILD;
 
@@ -31,16 +32,12 @@ public class FreeStyleRunImpl extends AbstractRunImpl<FreeStyleBuild> {
 
     @Override
     public Container<BlueChangeSetEntry> getChangeSet() {
-
-        Map<String, BlueChangeSetEntry> m = new LinkedHashMap<>();
-        int cnt=0;
-        for (ChangeLogSet.Entry e : run.getChangeSet()) {
-            cnt++;
-            String id = e.getCommitId();
-            if (id==null)   id = String.valueOf(cnt);
-            m.put(id,new ChangeSetResource(e, this));
-        }
-        return Containers.fromResourceMap(this.getLink(),m);
+        return new ChangeSetContainerImpl(run, this, new Supplier<List<ChangeLogSet<? extends Entry>>>() {
+            @Override
+            public List<ChangeLogSet<? extends Entry>> get() {
+                return Collections.<ChangeLogSet<? extends Entry>>singletonList(run.getChangeSet());
+            }
+        });
     }
 
     @Override
@@ -0,0 +1,262 @@
+package io.jenkins.blueocean.service.embedded.rest;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import hudson.console.PlainTextConsoleOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * Sparse index of line start offsets in a log, one entry every {@link #LINES_PER_ENTRY} lines.
+ *
+ * Each entry has the offset of its line in the raw log and in its plain text, with console notes stripped, so that
+ * an offset of the plain text can be found in the raw log by reading on from the closest entry. Notes are stripped a
+ * line at a time, so plain text is known up to the last line end.
+ *
+ * It's fed the raw bytes of the log, see {@link #indexer()}, and can be extended as the log grows. Index of a
+ * completed log file is kept next to the file, see {@link #getIndexFile(File)}, and indexes of log files in use are
+ * kept in memory. Indexes of logs that aren't files, as step logs, are kept in memory only, see
+ * {@link #forLog(String, long)}.
+ */
+final class LogLineIndex {
+    static final int LINES_PER_ENTRY = Integer.getInteger("BLUEOCEAN_LOG_LINE_INDEX_INTERVAL", 1000);
+
+    private static final int MAGIC = 0x424f4c49; // BOLI
+    private static final int FORMAT_VERSION = 2;
+
+    private static final Logger logger = LoggerFactory.getLogger(LogLineIndex.class);
+
+    /** Indexes of log files, keyed by path, and of other logs, keyed by {@link #forLog(String, long)} */
+    private static final Cache<String, LogLineIndex> indexes = CacheBuilder.newBuilder()
+        .maximumSize(Integer.getInteger("BLUEOCEAN_LOG_LINE_INDEX_CACHE_SIZE", 500))
+        .build();
+
+    /** Offset of the start of every {@link #LINES_PER_ENTRY}th line, first entry is line 0 at offset 0 */
+    private long[] offsets = new long[16];
+
+    /** Offset in the plain text of the line of each entry */
+    private long[] plainOffsets = new long[16];
+    private int entries = 1;
+
+    /** Number of bytes indexed */
+    private long length;
+
+    /** Number of line ends in indexed bytes */
+    private long lineEnds;
+
+    /** Offset of the line following the last line end */
+    private long lastLineStart;
+
+    /** Length of the plain text up to the last line end, that is offset of the last line in it */
+    private long plainLength;
+
+    /** Strips notes of the lines being indexed, counting their plain text in {@link #plainLength} */
+    private final OutputStream plain = new PlainTextConsoleOutputStream(new OutputStream() {
+        @Override
+        public void write(int b) {
+            plainLength++;
+        }
+
+        @Override
+        public void write(@Nonnull byte[] b, int off, int len) {
+            plainLength += len;
+        }
+    });
+
+    /**
+     * Gives index of given log file, loaded from its index file or cached in memory if available.
+     * Caller must {@link #indexer() extend it} to the current length of the file.
+     */
+    static @Nonnull LogLineIndex forFile(@Nonnull File logFile){
+        String key = logFile.getAbsolutePath();
+        synchronized (indexes) {
+            LogLineIndex index = indexes.getIfPresent(key);
+            if(index == null || index.getLength() > logFile.length()){ // not cached or file was replaced
+                index = load(getIndexFile(logFile));
+                if(index == null || index.length > logFile.length()){
+                    index = new LogLineIndex();
+                }
+                indexes.put(key, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Gives index of a log that isn't a file, cached in memory under given key for as long as the log doesn't get
+     * shorter than the index. Caller must {@link #indexer() extend it} to given length.
+     *
+     * @param key identifies the log, as the URL of its step
+     * @param length current length of the log
+     */
+    static @Nonnull LogLineIndex forLog(@Nonnull String key, long length){
+        String cacheKey = "log:" + key;
+        synchronized (indexes) {
+            LogLineIndex index = indexes.getIfPresent(cacheKey);
+            if(index == null || index.getLength() > length){ // not cached or log was replaced
+                index = new LogLineIndex();
+                indexes.put(cacheKey, index);
+            }
+            return index;
+        }
+    }
+
+    static File getIndexFile(File logFile){
+        return new File(logFile.getPath() + ".lines");
+    }
+
+    /** Number of bytes indexed */
+    synchronized long getLength(){
+        return length;
+    }
+
+    /** Number of lines in indexed bytes, last line counts even if it has no line end */
+    synchronized long getLineCount(){
+        return lineEnds + (length > lastLineStart ? 1 : 0);
+    }
+
+    /**
+     * Gives closest indexed line at or before given line.
+     *
+     * @return line number and its offset
+     */
+    synchronized long[] floor(long line){
+        int entry = (int) Math.min(Math.max(line, 0) / LINES_PER_ENTRY, entries - 1);
+        return new long[]{(long) entry * LINES_PER_ENTRY, offsets[entry]};
+    }
+
+    /** Length of the plain text of the indexed lines, up to the last line end */
+    synchronized long getPlainLength(){
+        return plainLength;
+    }
+
+    /** Offset of the last line, the one the indexed bytes end in */
+    synchronized long getLastLineStart(){
+        return lastLineStart;
+    }
+
+    /**
+     * Gives closest indexed line starting at or before given offset of the plain text.
+     *
+     * @return offset of the line in the plain text and in the raw log
+     */
+    synchronized long[] floorPlain(long plainOffset){
+        int entry = Arrays.binarySearch(plainOffsets, 0, entries, plainOffset);
+        if(entry < 0){
+            entry = Math.max(0, -entry - 2);
+        }
+        return new long[]{plainOffsets[entry], offsets[entry]};
+    }
+
+    /**
+     * Stream to write the bytes of the log following the ones already indexed to.
+     */
+    OutputStream indexer(){
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(@Nonnull byte[] b, int off, int len) throws IOException {
+                synchronized (LogLineIndex.this) {
+                    int from = off;
+                    for(int i = off; i < off + len; i++){
+                        length++;
+                        if(b[i] == '\n'){
+                            // strips and counts the line
+                            plain.write(b, from, i + 1 - from);
+                            from = i + 1;
+                            lineEnds++;
+                            lastLineStart = length;
+                            if(lineEnds % LINES_PER_ENTRY == 0){
+                                if(entries == offsets.length){
+                                    offsets = Arrays.copyOf(offsets, entries * 2);
+                                    plainOffsets = Arrays.copyOf(plainOffsets, entries * 2);
+                                }
+                                offsets[entries] = length;
+                                plainOffsets[entries++] = plainLength;
+                            }
+                        }
+                    }
+                    plain.write(b, from, off + len - from);
+                }
+            }
+        };
+    }
+
+    /** Writes this index next to given log file */
+    synchronized void save(@Nonnull File logFile){
+        File file = getIndexFile(logFile);
+        File tmp = null;
+        try {
+            tmp = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(LINES_PER_ENTRY);
+                out.writeLong(length);
+                out.writeLong(lineEnds);
+                out.writeLong(lastLineStart);
+                out.writeLong(plainLength);
+                out.writeInt(entries);
+                for(int i = 0; i < entries; i++){
+                    out.writeLong(offsets[i]);
+                    out.writeLong(plainOffsets[i]);
+                }
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn(String.format("Failed to write log line index %s: %s", file, e.getMessage()), e);
+        } finally {
+            if(tmp != null && tmp.exists() && !tmp.delete()){
+                logger.warn("Failed to delete "+tmp);
+            }
+        }
+    }
+
+    private static @CheckForNull LogLineIndex load(File file){
+        if(!file.isFile()){
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if(in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || in.readInt() != LINES_PER_ENTRY){
+                return null;
+            }
+            LogLineIndex index = new LogLineIndex();
+            in.readLong();
+            index.lineEnds = in.readLong();
+            index.lastLineStart = in.readLong();
+            index.plainLength = in.readLong();
+            index.entries = in.readInt();
+            index.offsets = new long[Math.max(16, index.entries)];
+            index.plainOffsets = new long[index.offsets.length];
+            for(int i = 0; i < index.entries; i++){
+                index.offsets[i] = in.readLong();
+                index.plainOffsets[i] = in.readLong();
+            }
+            // bytes of the last line aren't kept, it's indexed again from its start
+            index.length = index.lastLineStart;
+            return index;
+        } catch (IOException | RuntimeException e) {
+            logger.warn(String.format("Ignoring unreadable log line index %s: %s", file, e.getMessage()));
+            return null;
+        }
+    }
+}
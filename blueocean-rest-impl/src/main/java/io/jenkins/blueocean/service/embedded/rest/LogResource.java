@@ -1,7 +1,14 @@
 package io.jenkins.blueocean.service.embedded.rest;
 
 import com.google.common.base.Strings;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingOutputStream;
 import hudson.console.AnnotatedLargeText;
+import hudson.console.PlainTextConsoleOutputStream;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
 import io.jenkins.blueocean.commons.ServiceException;
 import org.kohsuke.stapler.AcceptHeader;
 import org.kohsuke.stapler.Header;
@@ -10,19 +17,100 @@ import org.kohsuke.stapler.StaplerResponse;
 import org.kohsuke.stapler.framework.io.CharSpool;
 import org.kohsuke.stapler.framework.io.LineEndNormalizingWriter;
 
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.servlet.AsyncContext;
 import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
+ * Log of a run or step.
+ *
+ * Plain text is streamed from the log, without buffering it, when the log file is known or the log is complete. With
+ * a known log file, standard <code>Range: bytes=</code> requests are served too. A range is of the plain text, with
+ * console notes stripped, the same text a whole response has, so its offsets aren't those of <code>start</code>
+ * parameter and <code>X-Text-Size</code> header, which are offsets of the log file. Ranges are found in the log file
+ * with {@link LogLineIndex}.
+ *
+ * Plain text can also be asked for by zero based line numbers, with <code>?startLine=&amp;count=</code>, or for the
+ * last lines with <code>?lastLines=</code>. Those responses tell the first line given and the number of lines in the
+ * log in <code>X-Start-Line</code> and <code>X-Line-Count</code> headers, lines are found with {@link LogLineIndex}.
+ *
+ * Whole text of a completed log file is sent from its {@link CompressedLog} to clients accepting gzip, with
+ * <code>Content-Length</code> and <code>ETag</code>. That is a request with <code>start=0</code>, or without
+ * <code>start</code> for a log no longer than <code>thresholdInKB</code>, and without <code>Range</code>. Other
+ * requests start within the log, at an offset of its raw text, which isn't an offset of the compressed plain text,
+ * so they are streamed from the log file.
+ *
+ * With <code>?follow=true</code> the log from <code>start</code> on is pushed in one chunked response, text is
+ * written as it's appended to the log and the response ends once the log is complete. Where the container supports
+ * asynchronous requests the request thread is released, and appended text is written by a few shared threads checking
+ * each followed log every {@link #FOLLOW_POLL_INTERVAL}, otherwise the request thread does it.
+ *
+ * Any response may be compressed, depending on <code>Accept-Encoding</code>, so they all vary on it.
+ *
  * @author Vivek Pandey
  */
 public class LogResource{
     public static final long DEFAULT_LOG_THREASHOLD = 150;
 
+    /** Milliseconds between checks for appended text of a followed log */
+    static final long FOLLOW_POLL_INTERVAL = Long.getLong("BLUEOCEAN_LOG_FOLLOW_POLL_INTERVAL", 500);
+
+    /** Number of threads writing appended text to followed logs, for all of them */
+    static final int FOLLOW_THREADS = Integer.getInteger("BLUEOCEAN_LOG_FOLLOW_THREADS", 4);
+
+    private static final ScheduledExecutorService followers = new ScheduledThreadPoolExecutor(FOLLOW_THREADS,
+        new NamingThreadFactory(new DaemonThreadFactory(), "Blue Ocean log follow"));
+
+    private final Supplier<AnnotatedLargeText> logSource;
     private final AnnotatedLargeText logText;
+    private final File logFile;
+    private final String indexKey;
+
     public LogResource(AnnotatedLargeText log) {
-        this.logText = log;
+        this(log, null);
+    }
+
+    /**
+     * @param logFile file logText is read from, if it's a plain uncompressed file, null otherwise
+     */
+    public LogResource(AnnotatedLargeText log, @CheckForNull File logFile) {
+        this(Suppliers.ofInstance(log), logFile);
+    }
+
+    /**
+     * @param logSource gives the current log text, {@link AnnotatedLargeText#isComplete()} of a given text doesn't
+     *                  change so it's asked again while the log is followed
+     * @param logFile file the log text is read from, if it's a plain uncompressed file, null otherwise
+     */
+    public LogResource(Supplier<AnnotatedLargeText> logSource, @CheckForNull File logFile) {
+        this(logSource, logFile, null);
+    }
+
+    /**
+     * @param logSource gives the current log text, {@link AnnotatedLargeText#isComplete()} of a given text doesn't
+     *                  change so it's asked again while the log is followed
+     * @param logFile file the log text is read from, if it's a plain uncompressed file, null otherwise
+     * @param indexKey identifies a log that isn't a file, so that its {@link LogLineIndex} is kept between requests,
+     *                 null to index it on each request
+     */
+    public LogResource(Supplier<AnnotatedLargeText> logSource, @CheckForNull File logFile, @CheckForNull String indexKey) {
+        this.logSource = logSource;
+        this.logText = logSource.get();
+        this.logFile = logFile != null && !logFile.getName().endsWith(".gz") ? logFile : null;
+        this.indexKey = indexKey;
     }
 
     public void doIndex(StaplerRequest req, StaplerResponse rsp, @Header("Accept") AcceptHeader accept){
@@ -31,6 +119,7 @@ public class LogResource{
 
     private void writeLog(StaplerRequest req, StaplerResponse rsp, AcceptHeader accept) {
         try {
+            rsp.setHeader("Vary", "Accept-Encoding");
             String download = req.getParameter("download");
 
             if("true".equalsIgnoreCase(download)) {
@@ -46,6 +135,33 @@ public class LogResource{
                 case "text/plain":
                     rsp.setContentType("text/plain;charset=UTF-8");
                     rsp.setStatus(HttpServletResponse.SC_OK);
+                    if(logFile != null){
+                        rsp.setHeader("Accept-Ranges", "bytes");
+                    }
+                    if("true".equalsIgnoreCase(req.getParameter("follow"))){
+                        followLog(req, rsp);
+                        return;
+                    }
+                    if(req.getParameter("startLine") != null || req.getParameter("lastLines") != null){
+                        writeLines(req, rsp);
+                        return;
+                    }
+                    if(logFile != null && logText.isComplete() && sendCompressedLog(req, rsp)){
+                        return;
+                    }
+                    if(logFile != null && logFile.isFile()){
+                        String range = req.getHeader("Range");
+                        if(range != null){
+                            sendRange(rsp, range);
+                        }else{
+                            streamLogFile(req, rsp);
+                        }
+                        return;
+                    }
+                    if(logText.isComplete()){
+                        streamLog(req, rsp);
+                        return;
+                    }
             }
             writeLogs(req, rsp);
         } catch (IOException e) {
@@ -54,20 +170,7 @@ public class LogResource{
     }
 
     private void writeLogs(StaplerRequest req, StaplerResponse rsp) throws IOException {
-        long threshold = DEFAULT_LOG_THREASHOLD * 1024;
-
-        String s = req.getParameter("thresholdInKB");
-        if(s!=null) {
-            threshold = Long.parseLong(s) * 1024;
-        }
-        long offset;
-        if(req.getParameter("start") != null){
-            offset = Long.parseLong(req.getParameter("start"));
-        }else if(logText.length() > threshold){
-            offset = logText.length()-threshold;
-        } else{
-            offset = 0;
-        }
+        long offset = getOffset(req, logText.length());
 
         CharSpool spool = new CharSpool();
 
@@ -82,6 +185,480 @@ public class LogResource{
         w.close();
     }
 
+    /**
+     * Streams complete log, its length doesn't change so the headers can be sent before the text.
+     */
+    private void streamLog(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        long length = logText.length();
+        long offset = getOffset(req, length);
+        rsp.addHeader("X-Text-Size", String.valueOf(length));
+
+        OutputStream out = createOutputStream(req, rsp, length - offset);
+        logText.writeLogTo(offset, out);
+        out.close();
+    }
+
+    /**
+     * Sends compressed text of the complete log file, if the whole text is requested and the client accepts gzip.
+     * Compressed text is scheduled to be written if it's not there yet. Compressed text has the console notes stripped,
+     * so it can't be entered at an offset of the log file and a tail can't be taken from it.
+     *
+     * @return false if the log is to be sent otherwise
+     */
+    private boolean sendCompressedLog(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        long length = logFile.length();
+        String acceptEncoding = req.getHeader("Accept-Encoding");
+        if(length <= CompressedLog.MIN_SIZE || acceptEncoding == null || !acceptEncoding.contains("gzip")
+            || req.getHeader("Range") != null || getOffset(req, length) != 0){
+            return false;
+        }
+        if(!CompressedLog.isAvailable(logFile)){
+            CompressedLog.schedule(logFile, logText);
+            return false;
+        }
+
+        String etag = CompressedLog.getETag(logFile);
+        rsp.setHeader("ETag", etag);
+        rsp.addHeader("X-Text-Size", String.valueOf(length));
+        if(etag.equals(req.getHeader("If-None-Match"))){
+            rsp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return true;
+        }
+        File file = CompressedLog.getFile(logFile);
+        try (FileInputStream in = new FileInputStream(file)) {
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+            rsp.setHeader("Content-Encoding", "gzip");
+            rsp.setHeader("Content-Length", String.valueOf(size));
+            OutputStream out = rsp.getOutputStream();
+            transfer(channel, 0, size, out);
+            out.close();
+        }
+        return true;
+    }
+
+    /**
+     * Streams log file from requested offset up to its current length, console notes are stripped on the way. Log
+     * appended while streaming is left for the next request starting at <code>X-Text-Size</code>.
+     */
+    private void streamLogFile(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        try (FileInputStream in = new FileInputStream(logFile)) {
+            FileChannel channel = in.getChannel();
+            long length = channel.size();
+            long start = getOffset(req, length);
+            rsp.addHeader("X-Text-Size", String.valueOf(length));
+            if(!logText.isComplete()) {
+                rsp.addHeader("X-More-Data", "true");
+            }
+
+            PlainTextConsoleOutputStream text = new PlainTextConsoleOutputStream(createOutputStream(req, rsp, length - start));
+            transfer(channel, start, length, text);
+            text.close();
+        }
+    }
+
+    /**
+     * Sends requested range of the plain text of the log file, up to its current length. Reading starts at the
+     * closest indexed line of the range, notes of the lines read are stripped and plain text before the range is
+     * skipped.
+     */
+    private void sendRange(StaplerResponse rsp, String range) throws IOException {
+        LogLineIndex index = indexLog();
+        long length;
+        long plainLength;
+        synchronized (index) {
+            length = index.getLength();
+            long lastLineStart = index.getLastLineStart();
+            // last line has no line end yet, so it's not in the plain length of the index
+            CountingOutputStream lastLine = new CountingOutputStream(ByteStreams.nullOutputStream());
+            PlainTextConsoleOutputStream text = new PlainTextConsoleOutputStream(lastLine);
+            writeRaw(lastLineStart, length, text);
+            text.close();
+            plainLength = index.getPlainLength() + lastLine.getCount();
+        }
+
+        long[] r = parseRange(range, plainLength);
+        if(r == null){
+            rsp.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            rsp.setHeader("Content-Range", "bytes */" + plainLength);
+            return;
+        }
+        rsp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        rsp.setHeader("Content-Range", String.format("bytes %d-%d/%d", r[0], r[1], plainLength));
+        rsp.setHeader("Content-Length", String.valueOf(r[1] + 1 - r[0]));
+        if(!logText.isComplete()) {
+            rsp.addHeader("X-More-Data", "true");
+        }
+
+        long[] floor = index.floorPlain(r[0]);
+        PlainTextConsoleOutputStream text = new PlainTextConsoleOutputStream(
+            new RangeOutputStream(rsp.getOutputStream(), r[0] - floor[0], r[1] + 1 - r[0]));
+        writeRaw(floor[1], length, text);
+        text.close();
+    }
+
+    /**
+     * Pushes the log from requested offset on, as it's appended, until the log is complete or the client went away.
+     */
+    private void followLog(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        rsp.setHeader("Cache-Control", "no-cache");
+        rsp.setHeader("X-Accel-Buffering", "no");
+        final Follower follower = new Follower(rsp.getOutputStream(), getOffset(req, logText.length()));
+        if(follower.poll()){
+            follower.close();
+            return;
+        }
+        if(!req.isAsyncSupported()){
+            try {
+                while(!follower.poll()){
+                    Thread.sleep(FOLLOW_POLL_INTERVAL);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            follower.close();
+            return;
+        }
+        final AsyncContext async = req.startAsync();
+        async.setTimeout(0);
+        follower.future = followers.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                if(follower.poll() && follower.close()){
+                    ScheduledFuture<?> future = follower.future;
+                    if(future != null){
+                        future.cancel(false);
+                    }
+                    async.complete();
+                }
+            }
+        }, FOLLOW_POLL_INTERVAL, FOLLOW_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /** Writes text appended to a followed log to its response */
+    private final class Follower {
+        private final OutputStream out;
+        private AnnotatedLargeText text = logText;
+        private long offset;
+        private volatile ScheduledFuture<?> future;
+        private boolean closed;
+
+        private Follower(OutputStream out, long offset) {
+            this.out = out;
+            this.offset = offset;
+        }
+
+        /**
+         * Writes text appended since the last poll.
+         *
+         * @return true if following is over, the log is complete or the client went away
+         */
+        private synchronized boolean poll() {
+            try {
+                AnnotatedLargeText current = logSource.get();
+                if(current.length() > offset){
+                    offset = current.writeLogTo(offset, out);
+                    out.flush();
+                }
+                // same text given again won't ever complete
+                boolean over = current.isComplete() || current == text;
+                text = current;
+                return over;
+            } catch (IOException | RuntimeException e) {
+                return true; // client went away, or the log can't be read on
+            }
+        }
+
+        /** @return false if it was closed already */
+        private synchronized boolean close() {
+            if(closed){
+                return false;
+            }
+            closed = true;
+            try {
+                out.close();
+            } catch (IOException e) {
+                // client went away
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Writes requested lines of the log, up to its current length.
+     */
+    private void writeLines(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        // checked before the log is indexed
+        Long lastLines = getLineParameter(req, "lastLines");
+        Long startLineParameter = getLineParameter(req, "startLine");
+        Long countParameter = getLineParameter(req, "count");
+
+        LogLineIndex index = indexLog();
+        long length;
+        long lineCount;
+        synchronized (index) {
+            length = index.getLength();
+            lineCount = index.getLineCount();
+        }
+
+        long startLine;
+        long count;
+        if(lastLines != null){
+            count = lastLines;
+            startLine = Math.max(0, lineCount - count);
+        }else{
+            startLine = startLineParameter;
+            count = countParameter != null ? countParameter : lineCount;
+        }
+        startLine = Math.min(startLine, lineCount);
+
+        long start = getLineOffset(index, startLine, length);
+        long end = count >= lineCount - startLine ? length : getLineOffset(index, startLine + count, length);
+
+        rsp.addHeader("X-Text-Size", String.valueOf(end));
+        rsp.addHeader("X-Start-Line", String.valueOf(startLine));
+        rsp.addHeader("X-Line-Count", String.valueOf(lineCount));
+        if(!logText.isComplete()) {
+            rsp.addHeader("X-More-Data", "true");
+        }
+
+        PlainTextConsoleOutputStream text = new PlainTextConsoleOutputStream(createOutputStream(req, rsp, end - start));
+        writeRaw(start, end, text);
+        text.close();
+    }
+
+    /** Index of the log, extended to its current length */
+    private LogLineIndex indexLog() throws IOException {
+        long length = logFile != null ? logFile.length() : logText.length();
+        LogLineIndex index;
+        if(logFile != null){
+            index = LogLineIndex.forFile(logFile);
+        }else{
+            index = indexKey != null ? LogLineIndex.forLog(indexKey, length) : new LogLineIndex();
+        }
+        if(index.getLength() > length){ // log file was replaced
+            index = new LogLineIndex();
+        }
+        synchronized (index) {
+            if(index.getLength() < length){
+                writeRaw(index.getLength(), length, index.indexer());
+                if(logFile != null && logText.isComplete()){
+                    index.save(logFile);
+                }
+            }
+        }
+        return index;
+    }
+
+    /** Offset of the start of given line, read forward from the closest indexed line */
+    private long getLineOffset(LogLineIndex index, long line, long length) throws IOException {
+        if(line >= index.getLineCount()){
+            return length;
+        }
+        long[] floor = index.floor(line);
+        if(floor[0] == line){
+            return floor[1];
+        }
+        LineSkipper skipper = new LineSkipper(line - floor[0]);
+        writeRaw(floor[1], length, skipper);
+        return floor[1] + skipper.skipped;
+    }
+
+    /**
+     * Writes raw bytes of the log between given offsets to given stream, or until the stream throws
+     * {@link StopReading}.
+     */
+    private void writeRaw(long from, long to, OutputStream out) throws IOException {
+        try {
+            if(logFile != null){
+                try (FileInputStream in = new FileInputStream(logFile)) {
+                    transfer(in.getChannel(), from, to, out);
+                }
+            }else{
+                logText.writeRawLogTo(from, new LimitedOutputStream(out, to - from));
+            }
+        } catch (StopReading e) {
+            // stream got all it wanted
+        }
+    }
+
+    private static void transfer(FileChannel channel, long from, long to, OutputStream out) throws IOException {
+        WritableByteChannel target = Channels.newChannel(out);
+        long position = from;
+        while(position < to){
+            long n = channel.transferTo(position, to - position, target);
+            if(n <= 0){ // file was truncated
+                break;
+            }
+            position += n;
+        }
+    }
+
+    /** Line number or count given as request parameter, null if it's not given */
+    private static Long getLineParameter(StaplerRequest req, String name){
+        String s = req.getParameter(name);
+        if(s == null){
+            return null;
+        }
+        long value;
+        try {
+            value = Long.parseLong(s);
+        } catch (NumberFormatException e) {
+            throw new ServiceException.BadRequestExpception(name + " must be a number: " + s);
+        }
+        if(value < 0){
+            throw new ServiceException.BadRequestExpception("startLine, count and lastLines must not be negative");
+        }
+        return value;
+    }
+
+    private long getOffset(StaplerRequest req, long length){
+        long threshold = DEFAULT_LOG_THREASHOLD * 1024;
+
+        String s = req.getParameter("thresholdInKB");
+        if(s!=null) {
+            threshold = Long.parseLong(s) * 1024;
+        }
+        if(req.getParameter("start") != null){
+            return Long.parseLong(req.getParameter("start"));
+        }else if(length > threshold){
+            return length-threshold;
+        }
+        return 0;
+    }
+
+    /**
+     * Parses single byte range, as in <code>bytes=0-499</code>, <code>bytes=500-</code> or <code>bytes=-500</code>.
+     *
+     * @return first and last byte of the range, null if it can't be satisfied
+     */
+    static long[] parseRange(String range, long length){
+        if(!range.startsWith("bytes=") || range.indexOf(',') >= 0){
+            return null;
+        }
+        String spec = range.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if(dash < 0){
+            return null;
+        }
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            long from;
+            long to;
+            if(Strings.isNullOrEmpty(first)){
+                long suffix = Long.parseLong(last);
+                from = Math.max(0, length - suffix);
+                to = length - 1;
+            }else{
+                from = Long.parseLong(first);
+                to = Strings.isNullOrEmpty(last) ? length - 1 : Math.min(Long.parseLong(last), length - 1);
+            }
+            if(from < 0 || from > to || from >= length){
+                return null;
+            }
+            return new long[]{from, to};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /** Thrown by streams given to {@link #writeRaw(long, long, OutputStream)} once they got the bytes they need */
+    private static final class StopReading extends IOException {
+    }
+
+    /** Counts bytes up to and including given number of line ends */
+    private static final class LineSkipper extends OutputStream {
+        private long lines;
+        private long skipped;
+
+        private LineSkipper(long lines) {
+            this.lines = lines;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(@Nonnull byte[] b, int off, int len) throws IOException {
+            for(int i = off; i < off + len; i++){
+                skipped++;
+                if(b[i] == '\n' && --lines == 0){
+                    throw new StopReading();
+                }
+            }
+        }
+    }
+
+    /**
+     * Skips given number of bytes and passes the following given number of bytes on, bytes written after those are
+     * dropped.
+     */
+    private static final class RangeOutputStream extends OutputStream {
+        private final OutputStream out;
+        private long skip;
+        private long remaining;
+
+        private RangeOutputStream(OutputStream out, long skip, long length) {
+            this.out = out;
+            this.skip = skip;
+            this.remaining = length;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(@Nonnull byte[] b, int off, int len) throws IOException {
+            if(remaining <= 0){
+                return; // rest of a line written after reading stopped
+            }
+            int skipped = (int) Math.min(len, skip);
+            skip -= skipped;
+            int n = (int) Math.min(len - skipped, remaining);
+            out.write(b, off + skipped, n);
+            remaining -= n;
+            if(remaining <= 0){
+                throw new StopReading();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    /** Passes given number of bytes on */
+    private static final class LimitedOutputStream extends OutputStream {
+        private final OutputStream out;
+        private long remaining;
+
+        private LimitedOutputStream(OutputStream out, long limit) {
+            this.out = out;
+            this.remaining = limit;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(@Nonnull byte[] b, int off, int len) throws IOException {
+            int n = (int) Math.min(len, remaining);
+            out.write(b, off, n);
+            remaining -= n;
+            if(remaining <= 0){
+                throw new StopReading();
+            }
+        }
+    }
+
     private Writer createWriter(StaplerRequest req, StaplerResponse rsp, long size) throws IOException {
         // when sending big text, try compression. don't bother if it's small
         if(size >4096)
@@ -90,4 +667,12 @@ public class LogResource{
             return rsp.getWriter();
     }
 
+    private OutputStream createOutputStream(StaplerRequest req, StaplerResponse rsp, long size) throws IOException {
+        // when sending big text, try compression. don't bother if it's small
+        if(size >4096)
+            return rsp.getCompressedOutputStream(req);
+        else
+            return rsp.getOutputStream();
+    }
+
 }
@@ -10,7 +10,6 @@ import hudson.model.ParametersAction;
 import hudson.model.ParametersDefinitionProperty;
 import hudson.model.Queue;
 import hudson.model.queue.ScheduleResult;
-import hudson.util.RunList;
 import io.jenkins.blueocean.commons.ServiceException;
 import io.jenkins.blueocean.rest.hal.Link;
 import io.jenkins.blueocean.rest.model.BluePipeline;
@@ -49,27 +48,35 @@ public class RunContainerImpl extends BlueRunContainer {
 
     @Override
     public BlueRun get(String name) {
-        RunList<? extends hudson.model.Run> runList = job.getBuilds();
-
-        hudson.model.Run run = null;
+        hudson.model.Run run;
         if (name != null) {
-            for (hudson.model.Run r : runList) {
-                if (r.getId().equals(name)) {
-                    run = r;
-                    break;
-                }
-            }
+            run = getRun(name);
             if (run == null) {
                 throw new ServiceException.NotFoundException(
                     String.format("Run %s not found in organization %s and pipeline %s",
                         name, pipeline.getOrganization(), job.getName()));
             }
         } else {
-            run = runList.getLastBuild();
+            run = job.getLastBuild();
         }
         return  AbstractRunImpl.getBlueRun(run, pipeline);
     }
 
+    /**
+     * Looks up run with given id by its build number, ids of runs are their build numbers, so that only this run is
+     * loaded from the job's builds, not the ones before it.
+     */
+    private hudson.model.Run getRun(String id) {
+        hudson.model.Run run;
+        try {
+            run = job.getBuildByNumber(Integer.parseInt(id));
+        } catch (NumberFormatException e) {
+            // builds made before ids became build numbers
+            run = job.getBuild(id);
+        }
+        return run != null && run.getId().equals(id) ? run : null;
+    }
+
     @Override
     public Iterator<BlueRun> iterator() {
         return RunSearch.findRuns(job, pipeline.getLink()).iterator();
@@ -1,11 +1,16 @@
 package io.jenkins.blueocean.service.embedded.rest;
 
+import com.google.common.base.Function;
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterators;
 import hudson.Extension;
 import hudson.model.Job;
 import hudson.model.Run;
+import hudson.model.RunMap;
 import hudson.model.TopLevelItem;
-import hudson.util.RunList;
 import io.jenkins.blueocean.commons.ServiceException;
 import io.jenkins.blueocean.rest.OmniSearch;
 import io.jenkins.blueocean.rest.Query;
@@ -17,10 +22,11 @@ import io.jenkins.blueocean.rest.pageable.Pageables;
 import jenkins.model.Jenkins;
 import jenkins.model.lazy.LazyBuildMixIn;
 
-import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
+import java.util.PriorityQueue;
 
 /**
  * Search API for Run
@@ -48,94 +54,242 @@ public class RunSearch extends OmniSearch<BlueRun> {
                 if(r != null) {
                     return Pageables.wrap(Collections.singletonList(r));
                 }else{
-                    Pageables.empty();
+                    return Pageables.empty();
                 }
             }
             if (p instanceof Job) {
-                return Pageables.wrap(findRuns((Job)p));
+                return pageRuns((Job)p);
             }else{
                 throw new ServiceException.BadRequestExpception(String.format("Pipeline %s not found", pipeline));
             }
         }else if(latestOnly){
             return Pageables.empty();
         }
-        return Pageables.wrap(findRuns(null));
+        return pageRuns(null);
     }
 
-    public static Iterable<BlueRun> findRuns(Job job, final Link parent){
-        final List<BlueRun> runs = new ArrayList<>();
+    /** Runs of given job, or of all jobs, whose pages are taken before {@link BlueRun}s are created */
+    private static Pageable<BlueRun> pageRuns(final Job job){
+        return new Pageable<BlueRun>() {
+            @Override
+            public Iterator<BlueRun> iterator(int start, int limit) {
+                return findRuns(job, null, start, limit).iterator();
+            }
+
+            @Override
+            public Iterator<BlueRun> iterator() {
+                return findRuns(job, null).iterator();
+            }
+        };
+    }
+
+    /**
+     * Gives runs of given job, or of all jobs if it's null, newest first for each job.
+     *
+     * {@link BlueRun}s are created, and build records loaded, as runs are iterated.
+     */
+    public static Iterable<BlueRun> findRuns(final Job job, final Link parent){
+        return new Iterable<BlueRun>() {
+            @Override
+            public Iterator<BlueRun> iterator() {
+                return toBlueRuns(runs(job), parent);
+            }
+        };
+    }
+
+    /**
+     * Same as {@link #findRuns(Job, Link)}, but only runs from start to start + limit, build records after them
+     * aren't loaded. Runs of a job with a {@link RunSummaryIndex} are paged from it, without loading the build
+     * records before start either.
+     */
+    public static Iterable<BlueRun> findRuns(final Job job, final Link parent, final int start, final int limit){
+        return new Iterable<BlueRun>() {
+            @Override
+            public Iterator<BlueRun> iterator() {
+                List<RunSummaryIndex.Summary> summaries = job != null ? RunSummaryIndex.get(job) : null;
+                Iterator<Run> page = summaries != null
+                    ? getRuns(job, Pageables.slice(summaries.iterator(), start, limit))
+                    : Pageables.slice(runs(job), start, limit);
+                return toBlueRuns(page, parent);
+            }
+        };
+    }
+
+    /**
+     * Gives runs of given job with build number lower than given one, newest first, build records are loaded as
+     * runs are iterated.
+     */
+    public static Iterable<BlueRun> findRunsBefore(final Job job, final Link parent, final int number){
+        return new Iterable<BlueRun>() {
+            @Override
+            public Iterator<BlueRun> iterator() {
+                List<RunSummaryIndex.Summary> summaries = RunSummaryIndex.get(job);
+                if(summaries != null){
+                    Iterator<RunSummaryIndex.Summary> older = Iterators.filter(summaries.iterator(), new Predicate<RunSummaryIndex.Summary>() {
+                        @Override
+                        public boolean apply(RunSummaryIndex.Summary summary) {
+                            return summary.getNumber() < number;
+                        }
+                    });
+                    return toBlueRuns(getRuns(job, older), parent);
+                }
+                return toBlueRuns(olderRuns(number > 1 ? job.getNearestOldBuild(number - 1) : null), parent);
+            }
+        };
+    }
+
+    /** Runs of given summaries, runs deleted since they were indexed are left out */
+    private static Iterator<Run> getRuns(final Job job, Iterator<RunSummaryIndex.Summary> summaries){
+        return Iterators.filter(Iterators.transform(summaries, new Function<RunSummaryIndex.Summary, Run>() {
+            @Override
+            public Run apply(RunSummaryIndex.Summary summary) {
+                return job.getBuildByNumber(summary.getNumber());
+            }
+        }), Predicates.notNull());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Iterator<Run> runs(Job job){
         Iterable<Job> pipelines;
         if(job != null){
             pipelines = ImmutableList.of(job);
         }else{
             pipelines = Jenkins.getActiveInstance().getItems(Job.class);
         }
-        for (Job p : pipelines) {
-            RunList<? extends Run> runList = p.getBuilds();
-
-            for (Run r : runList) {
-                runs.add(AbstractRunImpl.getBlueRun(r, new Reachable() {
-                    @Override
-                    public Link getLink() {
-                        return parent;
-                    }
-                }));
+        return Iterators.concat(Iterators.transform(pipelines.iterator(), new Function<Job, Iterator<Run>>() {
+            @Override
+            public Iterator<Run> apply(Job p) {
+                return buildsOf(p);
             }
-        }
-
-        return runs;
+        }));
     }
 
+    /** Runs of given job, newest first, loaded as they're iterated */
     @SuppressWarnings("unchecked")
-    public static Iterable<BlueRun> findRuns(Job job, final Link parent, int start, int limit){
-        final List<BlueRun> runs = new ArrayList<>();
-        Iterable<Job> pipelines;
-        if(job != null){
-            pipelines = ImmutableList.of(job);
-        }else{
-            pipelines = Jenkins.getInstance().getItems(Job.class);
+    static Iterator<Run> buildsOf(Job p){
+        if (p instanceof LazyBuildMixIn.LazyLoadingJob) {
+            return lazyRuns(((LazyBuildMixIn.LazyLoadingJob) p).getLazyBuildMixIn().getRunMap());
         }
+        return (Iterator<Run>) p.getBuilds().iterator();
+    }
 
-        for (Job p : pipelines) {
-            Iterator<? extends Run> runIterator;
-            if (job instanceof LazyBuildMixIn.LazyLoadingJob) {
-                final LazyBuildMixIn lazyLoadMixin = ((LazyBuildMixIn.LazyLoadingJob) job).getLazyBuildMixIn();
-                runIterator = lazyLoadMixin.getRunMap().iterator();
+    /** Runs of given run map, newest first, each one loaded only when it's asked for */
+    private static Iterator<Run> lazyRuns(RunMap<? extends Run> runMap){
+        return olderRuns(runMap.newestBuild());
+    }
 
-            }else{
-                runIterator = p.getBuilds().iterator();
+    /** Given run and the ones before it, newest first, each one loaded only when it's asked for */
+    private static Iterator<Run> olderRuns(final Run first){
+        return new AbstractIterator<Run>() {
+            private Run last;
 
+            @Override
+            protected Run computeNext() {
+                Run next = last == null ? first : last.getPreviousBuild();
+                if(next == null){
+                    return endOfData();
+                }
+                last = next;
+                return next;
             }
-            runs.addAll(collectRuns(runIterator, parent, start, limit));
-        }
+        };
+    }
 
-        return runs;
-    }
-
-    private static List<BlueRun> collectRuns(Iterator<? extends Run> runIterator, final Link parent, int start, int limit){
-        List<BlueRun> runs = new ArrayList<>();
-        int skipCount = start; // Skip up to the start
-        while (runIterator.hasNext()) {
-            if (skipCount > 0) {
-                runIterator.next();
-                skipCount--;
-            } else {
-                runs.add(AbstractRunImpl.getBlueRun(runIterator.next(), new Reachable() {
-                    @Override
-                    public Link getLink() {
-                        return parent;
-                    }
-                }));
-            }
-            if (runs.size() >= limit) {
-                return runs;
+    /**
+     * Gives runs of given jobs, latest started first.
+     *
+     * Runs of each job come newest first already, so they're merged through a heap holding the next run of each job:
+     * taking a run costs log of the number of jobs, and runs after the ones taken aren't loaded. Runs of jobs with a
+     * {@link RunSummaryIndex} are ordered from it, and loaded only when they're taken.
+     */
+    public static Iterator<Run> mergeRuns(Iterable<? extends Job> jobs){
+        final PriorityQueue<JobRuns> heap = new PriorityQueue<>(11, LATEST_STARTED);
+        for(Job job: jobs){
+            JobRuns runs = new JobRuns(job);
+            if(runs.advance()){
+                heap.add(runs);
             }
         }
-        return runs;
+        return new AbstractIterator<Run>() {
+            @Override
+            protected Run computeNext() {
+                while(!heap.isEmpty()){
+                    JobRuns head = heap.poll();
+                    Run run = head.get();
+                    if(head.advance()){
+                        heap.add(head);
+                    }
+                    if(run != null){
+                        return run;
+                    }
+                }
+                return endOfData();
+            }
+        };
     }
 
+    private static final Comparator<JobRuns> LATEST_STARTED = new Comparator<JobRuns>() {
+        @Override
+        public int compare(JobRuns o1, JobRuns o2) {
+            int c = Long.compare(o2.startTime, o1.startTime);
+            return c != 0 ? c : o1.job.getFullName().compareTo(o2.job.getFullName());
+        }
+    };
+
+    /** Position in the runs of a job being merged, at the run to be taken next */
+    private static final class JobRuns {
+        private final Job job;
+        private final Iterator<RunSummaryIndex.Summary> summaries;
+        private final Iterator<Run> runs;
+        private RunSummaryIndex.Summary summary;
+        private Run run;
+        private long startTime;
 
+        private JobRuns(Job job) {
+            this.job = job;
+            List<RunSummaryIndex.Summary> index = RunSummaryIndex.get(job);
+            this.summaries = index != null ? index.iterator() : null;
+            this.runs = index != null ? null : buildsOf(job);
+        }
+
+        /** Moves to the next run of the job, false if there is none */
+        private boolean advance(){
+            if(summaries != null){
+                if(!summaries.hasNext()){
+                    return false;
+                }
+                summary = summaries.next();
+                startTime = summary.getStartTimeInMillis();
+            }else{
+                if(!runs.hasNext()){
+                    return false;
+                }
+                run = runs.next();
+                startTime = run.getStartTimeInMillis();
+            }
+            return true;
+        }
 
+        /** Current run, null if it was deleted since it was indexed */
+        private Run get(){
+            return summaries != null ? job.getBuildByNumber(summary.getNumber()) : run;
+        }
+    }
+
+    private static Iterator<BlueRun> toBlueRuns(Iterator<Run> runs, final Link parent){
+        final Reachable reachable = new Reachable() {
+            @Override
+            public Link getLink() {
+                return parent;
+            }
+        };
+        return Iterators.transform(runs, new Function<Run, BlueRun>() {
+            @Override
+            public BlueRun apply(Run r) {
+                return AbstractRunImpl.getBlueRun(r, reachable);
+            }
+        });
+    }
 
     public static Iterable<BlueRun> findRuns(Job pipeline){
         return findRuns(pipeline, null);
@@ -145,7 +299,7 @@ public class RunSearch extends OmniSearch<BlueRun> {
         if(job != null){
             Run r = job.getLastBuild();
             if(r != null) {
-                AbstractRunImpl.getBlueRun(r, new PipelineContainerImpl().get(job.getFullName()));
+                return AbstractRunImpl.getBlueRun(r, new PipelineContainerImpl().get(job.getFullName()));
             }
         }
         return null;
@@ -0,0 +1,432 @@
+package io.jenkins.blueocean.service.embedded.rest;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import hudson.Extension;
+import hudson.model.Job;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import io.jenkins.blueocean.rest.model.BlueRun;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compact index of the runs of a job, kept in the job's directory, so that runs can be listed and paged without
+ * loading their build records.
+ *
+ * Each run has a fixed size record, appended when it starts and again when it's finalized or deleted, latest record of
+ * a run wins. Index of a job that doesn't have one yet is written in the background from its builds, see
+ * {@link #get(Job)}. One index is written at a time for each job, and at most {@link #MAX_REBUILDS} at a time for all
+ * jobs, the others wait in line, so that listing runs of many branches doesn't load the builds of all of them at once.
+ *
+ * Index is only used while it knows of the last build number the job gave out, see {@link Job#getNextBuildNumber()}.
+ * One that lost track of a build, because it was written elsewhere or a record didn't make it, is not used and is
+ * written again, callers fall back to the builds of the job meanwhile. Each written index has its own generation in
+ * its header, an index read from an earlier file is read again from the start.
+ *
+ * Ids of runs are their build numbers.
+ */
+public final class RunSummaryIndex {
+    static final String FILE_NAME = "blueocean-runs.idx";
+
+    private static final int MAGIC = 0x424f5249; // BORI
+    private static final int FORMAT_VERSION = 2;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 30;
+
+    private static final byte RUNNING = 0;
+    private static final byte FINISHED = 1;
+    private static final byte DELETED = 2;
+
+    private static final Result[] RESULTS = {Result.SUCCESS, Result.UNSTABLE, Result.FAILURE, Result.NOT_BUILT, Result.ABORTED};
+
+    private static final Logger logger = LoggerFactory.getLogger(RunSummaryIndex.class);
+
+    /** Indexes read, keyed by path of their file */
+    private static final Cache<String, Index> indexes = CacheBuilder.newBuilder()
+        .maximumSize(Integer.getInteger("BLUEOCEAN_RUN_SUMMARY_CACHE_SIZE", 1000))
+        .build();
+
+    /** Maximum number of indexes written from builds at the same time */
+    static final int MAX_REBUILDS = Integer.getInteger("BLUEOCEAN_RUN_SUMMARY_MAX_REBUILDS", 2);
+
+    private static final ExecutorService rebuilds = createExecutor();
+
+    /** Index files being written from builds, or waiting to be */
+    private static final Set<String> pending = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /** Generations of index files written */
+    private static final Random generations = new Random();
+
+    /** Guards writes to index files */
+    private static final Object lock = new Object();
+
+    private RunSummaryIndex() {
+    }
+
+    /** Summary of a run */
+    public static final class Summary {
+        private final int number;
+        private final long enQueueTime;
+        private final long startTime;
+        private final long duration;
+        private final Result result;
+        private final byte state;
+
+        private Summary(int number, long enQueueTime, long startTime, long duration, Result result, byte state) {
+            this.number = number;
+            this.enQueueTime = enQueueTime;
+            this.startTime = startTime;
+            this.duration = duration;
+            this.result = result;
+            this.state = state;
+        }
+
+        public int getNumber() {
+            return number;
+        }
+
+        public String getId() {
+            return String.valueOf(number);
+        }
+
+        public long getEnQueueTimeInMillis() {
+            return enQueueTime;
+        }
+
+        public long getStartTimeInMillis() {
+            return startTime;
+        }
+
+        public long getDurationInMillis() {
+            return duration;
+        }
+
+        public @CheckForNull Result getResult() {
+            return result;
+        }
+
+        public BlueRun.BlueRunState getState() {
+            return state == RUNNING ? BlueRun.BlueRunState.RUNNING : BlueRun.BlueRunState.FINISHED;
+        }
+    }
+
+    /**
+     * Gives summaries of the runs of given job, newest first.
+     *
+     * @return null if the job's index isn't written yet, it's then scheduled to be written
+     */
+    public static @CheckForNull List<Summary> get(@Nonnull Job<?,?> job){
+        File file = getFile(job);
+        if(!file.isFile()){
+            schedule(job);
+            return null;
+        }
+        String key = file.getAbsolutePath();
+        Index index = indexes.getIfPresent(key);
+        if(index == null){
+            index = new Index();
+            indexes.put(key, index);
+        }
+        try {
+            List<Summary> summaries = index.read(file);
+            int last = job.getNextBuildNumber() - 1;
+            if(index.getNewest() < last){
+                Run<?,?> run = job.getBuildByNumber(last);
+                if(run == null){
+                    // build number given out without a build, or deleted without the index knowing
+                    appendDeleted(file, last);
+                }else if(!run.isBuilding()){
+                    logger.info(String.format("Rewriting run index %s, it's missing build %s", file, last));
+                    schedule(job);
+                }
+                // a build that is starting is appended once it started
+                return null;
+            }
+            return summaries;
+        } catch (IOException e) {
+            logger.warn(String.format("Rewriting unreadable run index %s: %s", file, e.getMessage()));
+            indexes.invalidate(key);
+            if(file.delete()){
+                schedule(job);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Gives summary of the newest run of given job.
+     *
+     * @return null if there is no run or the job's index isn't written yet
+     */
+    public static @CheckForNull Summary getLatest(@Nonnull Job<?,?> job){
+        List<Summary> summaries = get(job);
+        return summaries == null || summaries.isEmpty() ? null : summaries.get(0);
+    }
+
+    /**
+     * Gives id of the newest successful run of given job.
+     *
+     * @return null if there is no such run or the job's index isn't written yet
+     */
+    public static @CheckForNull String getLastSuccessfulId(@Nonnull Job<?,?> job){
+        List<Summary> summaries = get(job);
+        if(summaries != null){
+            for(Summary summary: summaries){
+                if(summary.state == FINISHED && summary.result == Result.SUCCESS){
+                    return summary.getId();
+                }
+            }
+        }
+        return null;
+    }
+
+    static File getFile(Job<?,?> job){
+        return new File(job.getRootDir(), FILE_NAME);
+    }
+
+    private static void append(Run<?,?> run, byte state){
+        File file = getFile(run.getParent());
+        synchronized (lock) {
+            if(!file.isFile()){ // it's written from builds when first asked for
+                return;
+            }
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)))) {
+                write(run, state, out);
+            } catch (IOException e) {
+                logger.warn(String.format("Failed to update run index %s: %s", file, e.getMessage()), e);
+            }
+        }
+    }
+
+    /** Appends a deleted record for given build number, so that the index knows it was given out */
+    private static void appendDeleted(File file, int number){
+        synchronized (lock) {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)))) {
+                writeDeleted(number, out);
+            } catch (IOException e) {
+                logger.warn(String.format("Failed to update run index %s: %s", file, e.getMessage()), e);
+            }
+        }
+    }
+
+    private static void writeDeleted(int number, DataOutputStream out) throws IOException {
+        out.writeInt(number);
+        out.writeLong(0);
+        out.writeLong(0);
+        out.writeLong(0);
+        out.writeByte(-1);
+        out.writeByte(DELETED);
+    }
+
+    private static void write(Run<?,?> run, byte state, DataOutputStream out) throws IOException {
+        Result result = run.getResult();
+        int resultIndex = -1;
+        for(int i = 0; i < RESULTS.length; i++){
+            if(RESULTS[i] == result){
+                resultIndex = i;
+            }
+        }
+        out.writeInt(run.getNumber());
+        out.writeLong(run.getTimeInMillis());
+        out.writeLong(run.getStartTimeInMillis());
+        out.writeLong(run.getDuration());
+        out.writeByte(resultIndex);
+        out.writeByte(state == FINISHED && run.isBuilding() ? RUNNING : state);
+    }
+
+    private static void schedule(final Job<?,?> job){
+        final File file = getFile(job);
+        if(!pending.add(file.getAbsolutePath())){
+            return;
+        }
+        rebuilds.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    rebuild(job, file);
+                } catch (IOException | RuntimeException e) {
+                    logger.warn(String.format("Failed to write run index %s: %s", file, e.getMessage()), e);
+                } finally {
+                    pending.remove(file.getAbsolutePath());
+                }
+            }
+        });
+    }
+
+    private static ExecutorService createExecutor(){
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_REBUILDS, MAX_REBUILDS, 10L, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(),
+            new NamingThreadFactory(new DaemonThreadFactory(), "Blue Ocean run index"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /** Writes index of given job from its builds, loading each of them once */
+    private static void rebuild(Job<?,?> job, File file) throws IOException {
+        List<Integer> running = new ArrayList<>();
+        int newest = 0;
+        // builds up to this number are in the index once it's written
+        int last = job.getNextBuildNumber() - 1;
+        // each rebuild writes its own file, one left by a rebuild that failed midway doesn't get in the way
+        File tmp = File.createTempFile(FILE_NAME, ".tmp", file.getParentFile());
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeLong(generations.nextLong());
+                for(Iterator<? extends Run> it = RunSearch.buildsOf(job); it.hasNext(); ){
+                    Run<?,?> run = it.next();
+                    newest = Math.max(newest, run.getNumber());
+                    if(run.isBuilding()){
+                        running.add(run.getNumber());
+                    }
+                    write(run, FINISHED, out);
+                }
+            }
+            synchronized (lock) {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                indexes.invalidate(file.getAbsolutePath());
+                // runs that started or finished while builds were read
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)))) {
+                    int covered = newest;
+                    for(Iterator<? extends Run> it = RunSearch.buildsOf(job); it.hasNext(); ){
+                        Run<?,?> run = it.next();
+                        if(run.getNumber() <= newest){
+                            break;
+                        }
+                        write(run, FINISHED, out);
+                        covered = Math.max(covered, run.getNumber());
+                    }
+                    // last build number given out has no build, the index knows of it all the same
+                    if(covered < last){
+                        writeDeleted(last, out);
+                    }
+                    for(int number: running){
+                        Run<?,?> run = job.getBuildByNumber(number);
+                        if(run != null){
+                            write(run, FINISHED, out);
+                        }
+                    }
+                }
+            }
+        } finally {
+            if(tmp.exists() && !tmp.delete()){
+                logger.warn("Failed to delete "+tmp);
+            }
+        }
+    }
+
+    /**
+     * Runs read from an index file, file is read again from where it was left when it grows, or from the start when it
+     * was written again since.
+     */
+    private static final class Index {
+        private final TreeMap<Integer, Summary> runs = new TreeMap<>(Collections.<Integer>reverseOrder());
+        private long generation;
+        private long length;
+        private long lastModified;
+        /** Highest build number recorded, deleted ones included */
+        private int newest;
+        private List<Summary> snapshot = Collections.emptyList();
+
+        private synchronized int getNewest() {
+            return newest;
+        }
+
+        private synchronized List<Summary> read(File file) throws IOException {
+            long fileLength = file.length();
+            long fileModified = file.lastModified();
+            if(fileLength == length && fileModified == lastModified){
+                return snapshot;
+            }
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                if(in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION){
+                    throw new IOException("Unknown format");
+                }
+                long fileGeneration = in.readLong();
+                if(length == 0 || fileGeneration != generation){
+                    runs.clear();
+                    newest = 0;
+                    generation = fileGeneration;
+                    length = HEADER_SIZE;
+                }else if(in.skip(length - HEADER_SIZE) != length - HEADER_SIZE){
+                    throw new IOException("Index file was truncated");
+                }
+                lastModified = fileModified;
+                try {
+                    while(true){
+                        int number = in.readInt();
+                        long enQueueTime = in.readLong();
+                        long startTime = in.readLong();
+                        long duration = in.readLong();
+                        byte result = in.readByte();
+                        byte state = in.readByte();
+                        length += RECORD_SIZE;
+                        newest = Math.max(newest, number);
+                        if(state == DELETED){
+                            runs.remove(number);
+                        }else{
+                            runs.put(number, new Summary(number, enQueueTime, startTime, duration,
+                                result >= 0 && result < RESULTS.length ? RESULTS[result] : null, state));
+                        }
+                    }
+                } catch (EOFException e) {
+                    // end of the index, or a record being appended
+                }
+            }
+            snapshot = ImmutableList.copyOf(runs.values());
+            return snapshot;
+        }
+    }
+
+    @Extension
+    public static class RunListenerImpl extends RunListener<Run<?,?>> {
+        @Override
+        public void onStarted(Run<?,?> run, TaskListener listener) {
+            append(run, RUNNING);
+        }
+
+        @Override
+        public void onFinalized(Run<?,?> run) {
+            append(run, FINISHED);
+        }
+
+        @Override
+        public void onDeleted(Run<?,?> run) {
+            append(run, DELETED);
+        }
+    }
+
+}
@@ -1,16 +1,28 @@
 package io.jenkins.blueocean.service.embedded;
 
 
+import com.google.common.collect.ImmutableList;
+import com.mashape.unirest.http.HttpResponse;
+import com.mashape.unirest.http.Unirest;
 import hudson.model.FreeStyleBuild;
 import hudson.model.FreeStyleProject;
 import hudson.model.Run;
+import hudson.security.HudsonPrivateSecurityRealm;
+import hudson.security.LegacyAuthorizationStrategy;
 import hudson.tasks.ArtifactArchiver;
 import hudson.tasks.Shell;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 public class ArtifactContainerImplTest extends BaseTest {
     public static final String JOB_NAME = "artifactTest";
@@ -32,6 +44,89 @@ public class ArtifactContainerImplTest extends BaseTest {
         Assert.assertEquals("/job/artifactTest/1/artifact/test/me/out/0.txt", ((Map) artifacts.get(0)).get("url"));
      }
 
+    @Test
+    public void testArtifactsPaging() throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject(JOB_NAME);
+        p.getBuildersList().add(new Shell("#!/bin/bash\nmkdir -p test/me/out; cd test/me/out; for i in {0..105}; do echo -n x > $i.txt; done"));
+        p.getPublishersList().add(new ArtifactArchiver("**/*"));
+        Run r = j.buildAndAssertSuccess(p);
+
+        List artifacts = request().get("/organizations/jenkins/pipelines/"+JOB_NAME+"/runs/"+r.getId()+"/artifacts/?start=100&limit=100").build(List.class);
+        Assert.assertEquals(6, artifacts.size());
+
+        // manifest is written off the request thread once the run is finalized
+        File manifest = new File(r.getRootDir(), "blueocean-artifacts.manifest");
+        for(int i = 0; i < 100 && !manifest.isFile(); i++){
+            Thread.sleep(100);
+        }
+        Assert.assertTrue(manifest.isFile());
+
+        HttpResponse<String> response = get("/organizations/jenkins/pipelines/"+JOB_NAME+"/runs/"+r.getId()+"/artifacts/?limit=100", 200, "*/*", HttpResponse.class);
+        Assert.assertEquals("106", response.getHeaders().getFirst("X-Total-Count"));
+        Assert.assertEquals("106", response.getHeaders().getFirst("X-Total-Size"));
+
+        String link = response.getHeaders().getFirst("Link");
+        Assert.assertNotNull(link);
+        String next = link.substring(link.indexOf("/organizations/"), link.indexOf('>'));
+        artifacts = request().get(next).build(List.class);
+        Assert.assertEquals(6, artifacts.size());
+        Assert.assertEquals(1, ((Map) artifacts.get(0)).get("size"));
+
+        // manifest of deleted artifacts is dropped
+        r.deleteArtifacts();
+        artifacts = request().get("/organizations/jenkins/pipelines/"+JOB_NAME+"/runs/"+r.getId()+"/artifacts/").build(List.class);
+        Assert.assertEquals(0, artifacts.size());
+        Assert.assertFalse(manifest.exists());
+    }
+
+    @Test
+    public void testArtifactsZip() throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject(JOB_NAME);
+        p.getBuildersList().add(new Shell("mkdir -p out/dir; echo a > out/a.txt; echo b > out/b.jar; echo c > out/dir/c.txt"));
+        p.getPublishersList().add(new ArtifactArchiver("out/**"));
+        Run r = j.buildAndAssertSuccess(p);
+
+        HttpResponse<InputStream> response = Unirest.get(baseUrl+"/organizations/jenkins/pipelines/"+JOB_NAME+"/runs/"+r.getId()+"/artifacts/zip/?glob=**/*.txt&path=out/b.jar")
+            .header("Authorization", "Bearer "+jwtToken)
+            .asBinary();
+        Assert.assertEquals(200, response.getStatus());
+
+        List<String> entries = new ArrayList<>();
+        try (ZipInputStream zip = new ZipInputStream(response.getBody())) {
+            ZipEntry entry;
+            while((entry = zip.getNextEntry()) != null){
+                entries.add(entry.getName());
+                if(entry.getName().equals("out/dir/c.txt")){
+                    Assert.assertEquals("c", new BufferedReader(new InputStreamReader(zip, "UTF-8")).readLine());
+                }
+            }
+        }
+        Assert.assertEquals(ImmutableList.of("out/a.txt", "out/b.jar", "out/dir/c.txt"), entries);
+
+        get("/organizations/jenkins/pipelines/"+JOB_NAME+"/runs/"+r.getId()+"/artifacts/zip/?glob=*.png", 404, Map.class);
+    }
+
+    @Test
+    public void testArtifactsZipPermission() throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject(JOB_NAME);
+        p.getBuildersList().add(new Shell("mkdir -p out; echo a > out/a.txt"));
+        p.getPublishersList().add(new ArtifactArchiver("out/**"));
+        Run r = j.buildAndAssertSuccess(p);
+
+        j.jenkins.setSecurityRealm(new HudsonPrivateSecurityRealm(false));
+        j.jenkins.setAuthorizationStrategy(new LegacyAuthorizationStrategy());
+        System.setProperty("hudson.security.ArtifactsPermission", "true");
+        try {
+            // anonymous can read the run but not its artifacts
+            HttpResponse<InputStream> response = Unirest.get(baseUrl+"/organizations/jenkins/pipelines/"+JOB_NAME+"/runs/"+r.getId()+"/artifacts/zip/")
+                .header("Authorization", "Bearer "+jwtToken)
+                .asBinary();
+            Assert.assertEquals(403, response.getStatus());
+        } finally {
+            System.clearProperty("hudson.security.ArtifactsPermission");
+        }
+    }
+
     //@Test TODO needs viveks input
     public void testArtifact() throws Exception {
         FreeStyleProject p = j.createFreeStyleProject(JOB_NAME);
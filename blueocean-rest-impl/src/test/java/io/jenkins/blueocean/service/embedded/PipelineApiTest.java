@@ -2,6 +2,7 @@ package io.jenkins.blueocean.service.embedded;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.mashape.unirest.http.HttpResponse;
 import com.mashape.unirest.http.exceptions.UnirestException;
 import hudson.Extension;
 import hudson.FilePath;
@@ -18,34 +19,43 @@ import hudson.model.ParametersAction;
 import hudson.model.ParametersDefinitionProperty;
 import hudson.model.Project;
 import hudson.model.Queue;
+import hudson.model.Result;
 import hudson.model.Run;
 import hudson.model.StringParameterDefinition;
 import hudson.model.StringParameterValue;
+import hudson.model.User;
 import hudson.security.HudsonPrivateSecurityRealm;
 import hudson.security.LegacyAuthorizationStrategy;
 import hudson.tasks.ArtifactArchiver;
 import hudson.tasks.Shell;
 import hudson.tasks.junit.JUnitResultArchiver;
 import hudson.tasks.junit.TestResultAction;
+import io.jenkins.blueocean.commons.JsonConverter;
 import io.jenkins.blueocean.rest.Reachable;
 import io.jenkins.blueocean.rest.annotation.Capability;
 import io.jenkins.blueocean.rest.model.BluePipeline;
+import io.jenkins.blueocean.rest.model.BlueRun;
 import io.jenkins.blueocean.rest.model.Resource;
 import io.jenkins.blueocean.service.embedded.rest.AbstractPipelineImpl;
 import io.jenkins.blueocean.service.embedded.rest.BluePipelineFactory;
+import io.jenkins.blueocean.service.embedded.rest.RunSummaryIndex;
 import jenkins.model.Jenkins;
 import org.junit.Assert;
 import org.junit.Test;
+import org.jvnet.hudson.test.FakeChangeLogSCM;
 import org.jvnet.hudson.test.MockFolder;
 import org.jvnet.hudson.test.TestBuilder;
 import org.kohsuke.stapler.export.Exported;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Stack;
 import java.util.concurrent.ExecutionException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * @author Vivek Pandey
@@ -264,6 +274,16 @@ public class PipelineApiTest extends BaseTest {
         validateRun(b,resp);
     }
 
+    @Test
+    public void getPipelineRunNotFoundTest() throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject("pipeline4");
+        FreeStyleBuild b = p.scheduleBuild2(0).get();
+        j.assertBuildStatusSuccess(b);
+        get("/organizations/jenkins/pipelines/pipeline4/runs/2", 404, Map.class);
+        get("/organizations/jenkins/pipelines/pipeline4/runs/01", 404, Map.class);
+        get("/organizations/jenkins/pipelines/pipeline4/runs/xyz", 404, Map.class);
+    }
+
 
 
     @Test
@@ -298,6 +318,135 @@ public class PipelineApiTest extends BaseTest {
         validateRun(b, lr);
     }
 
+    @Test
+    public void getPipelineRunsPagedTest() throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject("pipeline6");
+        for(int i = 0; i < 3; i++){
+            j.assertBuildStatusSuccess(p.scheduleBuild2(0).get());
+        }
+
+        List<Map> resp = get("/organizations/jenkins/pipelines/pipeline6/runs/?start=1&limit=1", List.class);
+        Assert.assertEquals(1, resp.size());
+        Assert.assertEquals("2", resp.get(0).get("id"));
+
+        resp = get("/organizations/jenkins/pipelines/pipeline6/runs/?start=2&limit=5", List.class);
+        Assert.assertEquals(1, resp.size());
+        Assert.assertEquals("1", resp.get(0).get("id"));
+    }
+
+    @Test
+    public void getPipelineActivitiesCursorTest() throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject("pipeline7");
+        for(int i = 0; i < 3; i++){
+            j.assertBuildStatusSuccess(p.scheduleBuild2(0).get());
+        }
+
+        HttpResponse<String> response = get("/organizations/jenkins/pipelines/pipeline7/activities/?limit=1", 200, "*/*", HttpResponse.class);
+        List<Map> resp = JsonConverter.toJava(response.getBody(), List.class);
+        Assert.assertEquals(1, resp.size());
+        Assert.assertEquals("3", resp.get(0).get("id"));
+
+        String cursor = getCursor(response.getHeaders().getFirst("Link"));
+        response = get("/organizations/jenkins/pipelines/pipeline7/activities/?cursor="+cursor+"&limit=1", 200, "*/*", HttpResponse.class);
+        resp = JsonConverter.toJava(response.getBody(), List.class);
+        Assert.assertEquals(1, resp.size());
+        Assert.assertEquals("2", resp.get(0).get("id"));
+
+        cursor = getCursor(response.getHeaders().getFirst("Link"));
+        resp = get("/organizations/jenkins/pipelines/pipeline7/activities/?cursor="+cursor+"&limit=5", List.class);
+        Assert.assertEquals(1, resp.size());
+        Assert.assertEquals("1", resp.get(0).get("id"));
+
+        get("/organizations/jenkins/pipelines/pipeline7/activities/?cursor=x", 400, Map.class);
+        get("/organizations/jenkins/pipelines/pipeline7/activities/?cursor=xy123", 400, Map.class);
+        get("/organizations/jenkins/pipelines/pipeline7/activities/?cursor=r.4294967297", 400, Map.class);
+        get("/organizations/jenkins/pipelines/pipeline7/activities/?cursor=r.-1", 400, Map.class);
+    }
+
+    private static String getCursor(String link){
+        Assert.assertNotNull(link);
+        Matcher m = Pattern.compile("[?&]cursor=([^&>]+)").matcher(link);
+        Assert.assertTrue(link, m.find());
+        return m.group(1);
+    }
+
+    @Test
+    public void getPipelineRunChangeSetPagedTest() throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject("pipeline8");
+        FakeChangeLogSCM scm = new FakeChangeLogSCM();
+        for(int i = 1; i <= 3; i++){
+            scm.addChange().withAuthor("alice").withMsg("change " + i);
+        }
+        p.setScm(scm);
+        j.assertBuildStatusSuccess(p.scheduleBuild2(0).get());
+
+        List<Map> resp = get("/organizations/jenkins/pipelines/pipeline8/runs/1/changeSet/?start=1&limit=1", List.class);
+        Assert.assertEquals(1, resp.size());
+        Assert.assertEquals("change 2", resp.get(0).get("msg"));
+        Assert.assertEquals("alice", ((Map) resp.get(0).get("author")).get("id"));
+
+        // served from the cached page, an author that's no longer a user is given by its id and isn't created again
+        User.getById("alice", false).delete();
+        resp = get("/organizations/jenkins/pipelines/pipeline8/runs/1/changeSet/?start=1&limit=1", List.class);
+        Assert.assertEquals("change 2", resp.get(0).get("msg"));
+        Assert.assertEquals("alice", ((Map) resp.get(0).get("author")).get("id"));
+        Assert.assertNull(User.getById("alice", false));
+
+        Map run = get("/organizations/jenkins/pipelines/pipeline8/runs/1/");
+        Assert.assertEquals(3, ((List) run.get("changeSet")).size());
+    }
+
+    @Test
+    public void runSummaryIndexTest() throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject("pipeline6");
+        j.assertBuildStatusSuccess(p.scheduleBuild2(0).get());
+
+        List<RunSummaryIndex.Summary> summaries = RunSummaryIndex.get(p);
+        for(int i = 0; i < 100 && summaries == null; i++){
+            Thread.sleep(100);
+            summaries = RunSummaryIndex.get(p);
+        }
+        Assert.assertNotNull(summaries);
+        Assert.assertEquals(1, summaries.size());
+
+        // later runs are appended
+        FreeStyleBuild b2 = p.scheduleBuild2(0).get();
+        j.assertBuildStatusSuccess(b2);
+        summaries = RunSummaryIndex.get(p);
+        for(int i = 0; i < 100 && summaries.get(0).getState() != BlueRun.BlueRunState.FINISHED; i++){
+            Thread.sleep(100);
+            summaries = RunSummaryIndex.get(p);
+        }
+        Assert.assertEquals(2, summaries.size());
+        Assert.assertEquals(b2.getId(), summaries.get(0).getId());
+        Assert.assertEquals(Result.SUCCESS, summaries.get(0).getResult());
+        Assert.assertEquals(b2.getStartTimeInMillis(), summaries.get(0).getStartTimeInMillis());
+        Assert.assertEquals(b2.getId(), RunSummaryIndex.getLastSuccessfulId(p));
+
+        List<Map> resp = get("/organizations/jenkins/pipelines/pipeline6/runs/?start=1&limit=1", List.class);
+        Assert.assertEquals(1, resp.size());
+        Assert.assertEquals("1", resp.get(0).get("id"));
+
+        // index that doesn't know of the last build number isn't used until it does
+        p.updateNextBuildNumber(5);
+        Assert.assertNull(RunSummaryIndex.get(p));
+        summaries = RunSummaryIndex.get(p);
+        Assert.assertNotNull(summaries);
+        Assert.assertEquals(2, summaries.size());
+
+        // index written again is read from its start
+        Assert.assertTrue(new File(p.getRootDir(), "blueocean-runs.idx").delete());
+        Assert.assertNull(RunSummaryIndex.get(p));
+        summaries = RunSummaryIndex.get(p);
+        for(int i = 0; i < 100 && summaries == null; i++){
+            Thread.sleep(100);
+            summaries = RunSummaryIndex.get(p);
+        }
+        Assert.assertNotNull(summaries);
+        Assert.assertEquals(2, summaries.size());
+        Assert.assertEquals(b2.getId(), summaries.get(0).getId());
+    }
+
     @Test
     public void getPipelineRunsStopTest() throws Exception {
         FreeStyleProject p = j.createFreeStyleProject("p1");
@@ -0,0 +1,42 @@
+package io.jenkins.blueocean.rest.pageable;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.util.List;
+
+/**
+ * {@link Pageable} whose pages can be taken by continuation cursor instead of offset.
+ *
+ * {@link PagedResponse} serves a request without <code>start</code> by cursor, from the one in <code>cursor</code>
+ * parameter if any, and its <code>Link: rel="next"</code> header carries the cursor of the next page. A page taken by
+ * cursor resumes right after the last item of the previous page, so it costs the same whatever its position and
+ * items added in front of the collection meanwhile don't shift it.
+ */
+public interface Cursored<T> {
+    /**
+     * @param cursor cursor of a previous page, opaque to clients, null for the first page
+     * @param limit maximum number of items of the page
+     * @return page after given cursor
+     */
+    @Nonnull Page<T> page(@CheckForNull String cursor, int limit);
+
+    /** Items of a page and the cursor of the next one */
+    final class Page<T> {
+        private final List<T> items;
+        private final String next;
+
+        public Page(@Nonnull List<T> items, @CheckForNull String next) {
+            this.items = items;
+            this.next = next;
+        }
+
+        public @Nonnull List<T> getItems() {
+            return items;
+        }
+
+        /** Cursor of the next page, null if this one is the last */
+        public @CheckForNull String getNext() {
+            return next;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package io.jenkins.blueocean.rest.pageable;
+
+import javax.annotation.CheckForNull;
+
+/**
+ * {@link Pageable} whose content can be identified by a strong entity tag.
+ *
+ * {@link PagedResponse} sends it, mixed with the query of the request as that picks the page and what else is sent,
+ * as <code>ETag</code> and answers a request whose <code>If-None-Match</code> has it with 304 Not Modified, without
+ * iterating the {@link Pageable}. So the tag must be computed without doing the work the content would need.
+ */
+public interface ETagged {
+    /**
+     * @return strong entity tag, quoted, of this content, null if there is no stable tag for it, for example
+     *         because the content still changes
+     */
+    @CheckForNull String getETag();
+}
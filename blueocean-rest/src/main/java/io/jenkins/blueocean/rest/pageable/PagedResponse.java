@@ -1,6 +1,7 @@
 package io.jenkins.blueocean.rest.pageable;
 
 import com.google.common.collect.Iterators;
+import hudson.Util;
 import hudson.model.Api;
 import org.kohsuke.stapler.CancelRequestHandlingException;
 import org.kohsuke.stapler.HttpResponse;
@@ -9,11 +10,15 @@ import org.kohsuke.stapler.StaplerResponse;
 import org.kohsuke.stapler.interceptor.Interceptor;
 import org.kohsuke.stapler.interceptor.InterceptorAnnotation;
 
+import javax.annotation.CheckForNull;
 import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.lang.annotation.Retention;
 import java.lang.annotation.Target;
 import java.lang.reflect.InvocationTargetException;
+import java.net.URLEncoder;
+import java.util.Map;
 
 import static java.lang.annotation.ElementType.METHOD;
 import static java.lang.annotation.RetentionPolicy.RUNTIME;
@@ -52,6 +57,29 @@ public @interface PagedResponse {
                     if(limit < 0){
                         limit = DEFAULT_LIMIT;
                     }
+                    if(resp instanceof ETagged){
+                        String eTag = getETag(req, (ETagged) resp);
+                        if(eTag != null){
+                            rsp.setHeader("ETag", eTag);
+                            if(isNotModified(req, eTag)){
+                                rsp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                                return;
+                            }
+                        }
+                    }
+                    if(resp instanceof Totaled){
+                        for(Map.Entry<String, Long> total: ((Totaled) resp).getTotals().entrySet()){
+                            rsp.setHeader("X-Total-" + total.getKey(), String.valueOf(total.getValue()));
+                        }
+                    }
+                    if(resp instanceof Cursored && req.getParameter("start") == null){
+                        Cursored.Page<?> page = ((Cursored<?>) resp).page(req.getParameter("cursor"), limit);
+                        if(page.getNext() != null){
+                            rsp.setHeader("Link", "<" + getNextLink(req, "cursor=" + URLEncoder.encode(page.getNext(), "UTF-8") + "&limit=" + limit) + ">; rel=\"next\"");
+                        }
+                        new Api(page.getItems().toArray()).doJson(req, rsp);
+                        return;
+                    }
                     Object[] page = Iterators.toArray(resp.iterator(start, limit), Object.class);
                         String separator = (req.getQueryString() != null) ? "&" : "?";
                         rsp.setHeader("Link", "<" + req.getRequestURIWithQueryString() + separator + "start=" + (start + limit) + "&limit="+limit + ">; rel=\"next\"");
@@ -60,6 +88,54 @@ public @interface PagedResponse {
             };
         }
 
+        /** URL of the request with its paging parameters replaced by given ones */
+        private static String getNextLink(StaplerRequest req, String paging){
+            StringBuilder url = new StringBuilder(req.getRequestURI());
+            char separator = '?';
+            if(req.getQueryString() != null){
+                for(String param: req.getQueryString().split("&")){
+                    String name = param.split("=", 2)[0];
+                    if(param.isEmpty() || name.equals("cursor") || name.equals("start") || name.equals("limit")){
+                        continue;
+                    }
+                    url.append(separator).append(param);
+                    separator = '&';
+                }
+            }
+            return url.append(separator).append(paging).toString();
+        }
+
+        /**
+         * Entity tag of the response to given request, the tag of the content mixed with the query of the request, as
+         * paging and other parameters pick what of the content is sent.
+         *
+         * @return null if the content has no tag
+         */
+        public static @CheckForNull String getETag(StaplerRequest req, ETagged content){
+            String eTag = content.getETag();
+            if(eTag == null || req.getQueryString() == null){
+                return eTag;
+            }
+            return '"' + Util.getDigestOf(eTag + '?' + req.getQueryString()) + '"';
+        }
+
+        /** Whether given request has given entity tag already, and is to be answered with 304 Not Modified */
+        public static boolean isNotModified(StaplerRequest req, @CheckForNull String eTag){
+            return eTag != null && matches(req.getHeader("If-None-Match"), eTag);
+        }
+
+        private static boolean matches(String ifNoneMatch, String eTag){
+            if(ifNoneMatch == null){
+                return false;
+            }
+            for(String tag: ifNoneMatch.split(",")){
+                tag = tag.trim();
+                if(tag.equals("*") || tag.equals(eTag)){
+                    return true;
+                }
+            }
+            return false;
+        }
 
     }
 }
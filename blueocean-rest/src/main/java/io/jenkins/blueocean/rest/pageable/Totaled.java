@@ -0,0 +1,17 @@
+package io.jenkins.blueocean.rest.pageable;
+
+import javax.annotation.Nonnull;
+import java.util.Map;
+
+/**
+ * {@link Pageable} that knows totals of the whole collection, such as the number of its items.
+ *
+ * {@link PagedResponse} sends each of them with every page as an <code>X-Total-</code> header, for example
+ * <code>X-Total-Count</code> for the total named <code>Count</code>.
+ */
+public interface Totaled {
+    /**
+     * @return totals by name, empty if they aren't known without iterating the whole collection
+     */
+    @Nonnull Map<String, Long> getTotals();
+}